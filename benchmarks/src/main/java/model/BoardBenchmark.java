@@ -0,0 +1,77 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the board operations every other part of the game is built on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+    @Param({"5", "8", "64", "1000"})
+    int size;
+
+    Board board;
+    Board same;
+    int[] xs;
+    int[] ys;
+    int next;
+
+    @Setup
+    public void setUp() {
+        Random rng = new Random(42);
+        board = new Board(size);
+        for (int i = 0; i < size * 2; i++) {
+            board.toggleTile(rng.nextInt(size), rng.nextInt(size));
+        }
+        same = new Board(board);
+        xs = new int[1024];
+        ys = new int[1024];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = rng.nextInt(size);
+            ys[i] = rng.nextInt(size);
+        }
+    }
+
+    @Benchmark
+    public void toggleTile() {
+        int i = next++ & 1023;
+        board.toggleTile(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    public void tileToggle() {
+        int i = next++ & 1023;
+        board.getTile(xs[i], ys[i]).toggle();
+    }
+
+    @Benchmark
+    public Board copy() {
+        return new Board(board);
+    }
+
+    @Benchmark
+    public boolean equalBoards() {
+        return board.equals(same);
+    }
+
+    @Benchmark
+    public int hash() {
+        return board.hashCode();
+    }
+
+    @Benchmark
+    public void iterateTiles(Blackhole bh) {
+        for (Tile t : board) {
+            bh.consume(t.isOn());
+        }
+    }
+}
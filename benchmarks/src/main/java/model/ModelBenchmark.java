@@ -0,0 +1,70 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the public model operations the views call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelBenchmark {
+    @Param({"5", "64", "1000"})
+    int size;
+
+    LightsOutModel model;
+    File lob;
+
+    @Setup
+    public void setUp() throws IOException {
+        model = new LightsOutModel(size);
+        model.generateRandomBoard(10);
+        lob = File.createTempFile("bench", ".lob");
+        lob.deleteOnExit();
+        Random rng = new Random(42);
+        try (PrintWriter out = new PrintWriter(lob)) {
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    out.print(rng.nextInt(2));
+                    out.print(x < size - 1 ? ' ' : '\n');
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        lob.delete();
+    }
+
+    @Benchmark
+    public boolean gameOver() {
+        return model.gameOver();
+    }
+
+    @Benchmark
+    public LightsOutModel generateRandomBoard() {
+        model.generateRandomBoard();
+        return model;
+    }
+
+    @Benchmark
+    public LightsOutModel generateSolvableBoard() {
+        model.generateSolvableBoard();
+        return model;
+    }
+
+    @Benchmark
+    public boolean loadBoardFromFile() {
+        return model.loadBoardFromFile(lob);
+    }
+}
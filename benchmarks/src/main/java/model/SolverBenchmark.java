@@ -0,0 +1,148 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each solver strategy on boards scrambled by a number of random presses. Each strategy has its own
+ * parameter space because none of them is usable on every size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+    static Board[] scrambled(int size, int depth, int count) {
+        Random rng = new Random(42);
+        Board[] boards = new Board[count];
+        for (int b = 0; b < count; b++) {
+            boards[b] = new Board(size);
+            for (int i = 0; i < depth; i++) {
+                boards[b].toggleTile(rng.nextInt(size), rng.nextInt(size));
+            }
+        }
+        return boards;
+    }
+
+    @State(Scope.Thread)
+    public static class LinearBoards {
+        @Param({"5", "7", "20"})
+        int size;
+        @Param({"5", "25"})
+        int depth;
+        Board[] boards;
+        int next;
+
+        @Setup
+        public void setUp() {
+            boards = scrambled(size, depth, 64);
+            LinearSolver.forSize(size);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ChaseBoards {
+        @Param({"5", "20", "200", "1000"})
+        int size;
+        @Param({"5", "1000"})
+        int depth;
+        Board[] boards;
+        int next;
+
+        @Setup
+        public void setUp() {
+            boards = scrambled(size, depth, 16);
+            ChaseSolver.forSize(size);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SearchBoards {
+        @Param({"5"})
+        int size;
+        @Param({"3", "6"})
+        int depth;
+        Board[] boards;
+        int next;
+
+        @Setup
+        public void setUp() {
+            boards = scrambled(size, depth, 16);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class OptimalBoards {
+        @Param({"5", "6", "7"})
+        int size;
+        @Param({"6", "25"})
+        int depth;
+        Board[] boards;
+        int next;
+
+        @Setup
+        public void setUp() {
+            boards = scrambled(size, depth, 16);
+        }
+    }
+
+    /**
+     * The same hard boards at every thread count, so the scores show the speedup of hash distributed A*.
+     */
+    @State(Scope.Thread)
+    public static class ParallelBoards {
+        @Param({"6", "7"})
+        int size;
+        @Param({"1", "2", "4", "8"})
+        int threads;
+        Board[] boards;
+        int next;
+
+        @Setup
+        public void setUp() {
+            boards = scrambled(size, 25, 16);
+        }
+    }
+
+    @Benchmark
+    public Solution linear(LinearBoards s) {
+        return Solver.solve(s.boards[s.next++ & 63], SolverMode.LINEAR);
+    }
+
+    @Benchmark
+    public Solution chase(ChaseBoards s) {
+        return Solver.solve(s.boards[s.next++ & 15], SolverMode.CHASE);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Solution aStar(SearchBoards s) {
+        return Solver.solve(s.boards[s.next++ & 15], SolverMode.ASTAR);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Solution optimal(OptimalBoards s) {
+        return Solver.solve(s.boards[s.next++ & 15], SolverMode.OPTIMAL);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Solution parallel(ParallelBoards s) {
+        Board b = s.boards[s.next++ & 15];
+        if (!ChaseSolver.forSize(b.getSize()).isSolvable(b)) {
+            return Solution.UNSOLVABLE;
+        }
+        return Solver.parallelAStar(b, s.threads);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Solution referenceAStar(SearchBoards s) {
+        return Solver.aStarSolution(s.boards[s.next++ & 15]);
+    }
+}
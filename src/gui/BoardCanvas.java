@@ -0,0 +1,235 @@
+package gui;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import model.LightsOutModel;
+import model.ModelEvent;
+
+import java.util.Arrays;
+
+/**
+ * Draws the board on a canvas for boards too large for a button per light.
+ * <p>
+ * Only the visible part of the board is drawn, pixel by pixel from the model's packed rows, so a frame costs the
+ * same whether the board is 50x50 or 2000x2000. Drag to pan, scroll to zoom around the pointer, click to press a
+ * light; the clicked light is found by dividing by the zoom. A press only redraws the rectangle around the lights it
+ * changed.
+ */
+class BoardCanvas extends Pane {
+    private static final int ON = 0xFFFFFFFF;
+    private static final int OFF = 0xFF000000;
+    private static final int GRID = 0xFF404040;
+    private static final int BACKGROUND = 0xFF808080;
+    /**
+     * Grid lines are drawn between lights this many pixels wide or more.
+     */
+    private static final double GRID_FROM = 4;
+    private static final double MAX_CELL = 100;
+    private static final double ZOOM_STEP = 1.25;
+    private static final double DRAG_SLOP = 4;
+    /**
+     * Marks columns in {@link #columnTile} that are off the board or on a grid line.
+     */
+    private static final int OUTSIDE = -1;
+    private static final int GRID_LINE = -2;
+
+    private final LightsOutModel model;
+    private final Canvas canvas = new Canvas();
+    /**
+     * Pixels per light.
+     */
+    private double cell;
+    /**
+     * The board pixel at the top left corner of the canvas.
+     */
+    private double originX;
+    private double originY;
+
+    private long[] row = new long[1];
+    private int[] pixels = new int[0];
+    private int[] columnTile = new int[0];
+
+    private double pressX;
+    private double pressY;
+    private boolean dragged;
+
+    BoardCanvas(LightsOutModel model, double width, double height) {
+        this.model = model;
+        setPrefSize(width, height);
+        getChildren().add(canvas);
+        canvas.widthProperty().bind(widthProperty());
+        canvas.heightProperty().bind(heightProperty());
+        canvas.widthProperty().addListener(o -> repaintAll());
+        canvas.heightProperty().addListener(o -> repaintAll());
+
+        setOnMousePressed(this::pressed);
+        setOnMouseDragged(this::dragged);
+        setOnMouseReleased(this::released);
+        setOnScroll(this::scrolled);
+        fit();
+    }
+
+    /**
+     * Zooms out to show the whole board. Call after a board of another size is loaded.
+     */
+    void fit() {
+        int dim = model.getDimension();
+        double side = Math.min(viewWidth(), viewHeight());
+        cell = Math.min(MAX_CELL, side / dim);
+        originX = 0;
+        originY = 0;
+        row = new long[(dim + 63) >>> 6];
+        repaintAll();
+    }
+
+    void repaintAll() {
+        render(0, 0, (int) canvas.getWidth(), (int) canvas.getHeight());
+    }
+
+    /**
+     * Redraws the lights an event changed.
+     */
+    void repaint(ModelEvent event) {
+        int n = event.getChangedCount();
+        if (n == 0) {
+            return;
+        }
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, event.getChangedX(i));
+            maxX = Math.max(maxX, event.getChangedX(i));
+            minY = Math.min(minY, event.getChangedY(i));
+            maxY = Math.max(maxY, event.getChangedY(i));
+        }
+        int x0 = Math.max(0, (int) Math.floor(minX * cell - originX));
+        int y0 = Math.max(0, (int) Math.floor(minY * cell - originY));
+        int x1 = Math.min((int) canvas.getWidth(), (int) Math.ceil((maxX + 1) * cell - originX));
+        int y1 = Math.min((int) canvas.getHeight(), (int) Math.ceil((maxY + 1) * cell - originY));
+        render(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Draws a rectangle of the canvas into the pixel buffer and copies it to the canvas in one call.
+     */
+    private void render(int x0, int y0, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        int dim = model.getDimension();
+        boolean grid = cell >= GRID_FROM;
+        if (pixels.length < w * h) {
+            pixels = new int[w * h];
+        }
+        if (columnTile.length < w) {
+            columnTile = new int[w];
+        }
+        for (int i = 0; i < w; i++) {
+            double bx = x0 + i + originX;
+            int tx = (int) Math.floor(bx / cell);
+            if (tx < 0 || tx >= dim) {
+                columnTile[i] = OUTSIDE;
+            } else {
+                columnTile[i] = grid && bx - tx * cell < 1 ? GRID_LINE : tx;
+            }
+        }
+        int lastRow = -1;
+        for (int j = 0; j < h; j++) {
+            double by = y0 + j + originY;
+            int ty = (int) Math.floor(by / cell);
+            int base = j * w;
+            if (ty < 0 || ty >= dim) {
+                Arrays.fill(pixels, base, base + w, BACKGROUND);
+            } else if (grid && by - ty * cell < 1) {
+                for (int i = 0; i < w; i++) {
+                    pixels[base + i] = columnTile[i] == OUTSIDE ? BACKGROUND : GRID;
+                }
+            } else {
+                if (ty != lastRow) {
+                    model.getRow(ty, row);
+                    lastRow = ty;
+                }
+                for (int i = 0; i < w; i++) {
+                    int tx = columnTile[i];
+                    if (tx == OUTSIDE) {
+                        pixels[base + i] = BACKGROUND;
+                    } else if (tx == GRID_LINE) {
+                        pixels[base + i] = GRID;
+                    } else {
+                        pixels[base + i] = (row[tx >>> 6] >>> tx & 1L) != 0 ? ON : OFF;
+                    }
+                }
+            }
+        }
+        canvas.getGraphicsContext2D().getPixelWriter()
+                .setPixels(x0, y0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+    }
+
+    private void pressed(MouseEvent e) {
+        pressX = e.getX();
+        pressY = e.getY();
+        dragged = false;
+    }
+
+    private void dragged(MouseEvent e) {
+        double dx = e.getX() - pressX;
+        double dy = e.getY() - pressY;
+        if (!dragged && Math.abs(dx) < DRAG_SLOP && Math.abs(dy) < DRAG_SLOP) {
+            return;
+        }
+        dragged = true;
+        originX -= dx;
+        originY -= dy;
+        pressX = e.getX();
+        pressY = e.getY();
+        clampOrigin();
+        repaintAll();
+    }
+
+    private void released(MouseEvent e) {
+        if (dragged || e.getButton() != MouseButton.PRIMARY) {
+            return;
+        }
+        int tx = (int) Math.floor((e.getX() + originX) / cell);
+        int ty = (int) Math.floor((e.getY() + originY) / cell);
+        int dim = model.getDimension();
+        if (tx >= 0 && tx < dim && ty >= 0 && ty < dim) {
+            model.toggleTile(tx, ty);
+        }
+    }
+
+    private void scrolled(ScrollEvent e) {
+        if (e.getDeltaY() == 0) {
+            return;
+        }
+        double fitCell = Math.min(viewWidth(), viewHeight()) / model.getDimension();
+        double zoomed = e.getDeltaY() > 0 ? cell * ZOOM_STEP : cell / ZOOM_STEP;
+        zoomed = Math.max(Math.min(fitCell, MAX_CELL), Math.min(MAX_CELL, zoomed));
+        // keep the board point under the pointer where it is
+        originX = (e.getX() + originX) * zoomed / cell - e.getX();
+        originY = (e.getY() + originY) * zoomed / cell - e.getY();
+        cell = zoomed;
+        clampOrigin();
+        repaintAll();
+    }
+
+    private void clampOrigin() {
+        double boardSide = cell * model.getDimension();
+        originX = Math.max(0, Math.min(originX, boardSide - viewWidth()));
+        originY = Math.max(0, Math.min(originY, boardSide - viewHeight()));
+    }
+
+    private double viewWidth() {
+        return getWidth() > 0 ? getWidth() : getPrefWidth();
+    }
+
+    private double viewHeight() {
+        return getHeight() > 0 ? getHeight() : getPrefHeight();
+    }
+}
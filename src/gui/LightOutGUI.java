@@ -1,6 +1,7 @@
 package gui;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
@@ -8,24 +9,32 @@ import javafx.scene.layout.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import model.LightsOutModel;
+import model.ModelEvent;
 import model.Observer;
-import model.Tile;
 import java.io.File;
 
 /**
- * A graphic user interface for Lights Out
+ * A graphic user interface for Lights Out. Boards up to {@value #BUTTON_LIMIT} lights a side are a grid of buttons,
+ * larger ones are drawn on a {@link BoardCanvas}; --renderer=buttons or --renderer=canvas picks one for every size.
  *
  * @author Maimuna Ullah (mnu2234)
  */
-public class LightOutGUI extends Application implements Observer<LightsOutModel, String> {
+public class LightOutGUI extends Application implements Observer<LightsOutModel, ModelEvent> {
     private LightsOutModel model;
     private Label moves  = new Label("Moves: 0");
     private Label message = new Label("Message: ");
-    private Button[][] board = new Button[5][5];
+    /**
+     * The largest side length drawn as buttons unless a renderer is chosen.
+     */
+    static final int BUTTON_LIMIT = 32;
+    private Button[][] board;
+    private BoardCanvas canvas;
+    private String renderer;
+    private BorderPane border;
 
     @Override
     public void start(Stage stage) throws Exception {
-        BorderPane border = new BorderPane();
+        border = new BorderPane();
         border.setPrefHeight(500);
         border.setPrefWidth(500);
 
@@ -37,10 +46,8 @@ public class LightOutGUI extends Application implements Observer<LightsOutModel,
         topPane.setHgap(5);
         border.setTop(topPane);
 
-        //Creates and sets the center pane of a grid of buttons representing lights
-        Pane mainPane = this.makeButtonPane();
-        mainPane.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
-        border.setCenter(mainPane);
+        //Creates and sets the center pane of a grid of buttons or a canvas representing lights
+        this.makeBoardPane();
 
         //Creates and sets the bottom pane of the three action buttons
         Pane bottomPane = new HBox();
@@ -59,7 +66,7 @@ public class LightOutGUI extends Application implements Observer<LightsOutModel,
                     File selectedFile = fileChooser.showOpenDialog(stage);
                     model.loadBoardFromFile(selectedFile);
                 });
-        hint.setOnAction(event -> model.getHint());
+        hint.setOnAction(event -> model.requestHint()); //solved in the background, announced on this thread
         bottomPane.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
         border.setBottom(bottomPane);
 
@@ -70,20 +77,47 @@ public class LightOutGUI extends Application implements Observer<LightsOutModel,
     }
 
     /**
-     * Creates a 5x5 grid of buttons representing the lights
+     * Puts a board pane for the model's dimension in the center, buttons or a canvas depending on the renderer.
+     */
+    private void makeBoardPane() {
+        Pane mainPane;
+        if (useCanvas(model.getDimension())) {
+            board = null;
+            canvas = new BoardCanvas(model, 500, 500);
+            mainPane = canvas;
+        } else {
+            canvas = null;
+            mainPane = this.makeButtonPane();
+        }
+        mainPane.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
+        border.setCenter(mainPane);
+    }
+
+    private boolean useCanvas(int dim) {
+        if (renderer == null) {
+            return dim > BUTTON_LIMIT;
+        }
+        return renderer.equals("canvas");
+    }
+
+    /**
+     * Creates an NxN grid of buttons representing the lights, sized to the model's dimension
      * @return a button grid pane
      */
     private Pane makeButtonPane() {
         GridPane grid = new GridPane();
-        for (int row = 0; row < 5; row++) {
-            for (int col = 0; col < 5; col++) {
+        int dim = model.getDimension();
+        double side = 500.0 / dim;
+        board = new Button[dim][dim];
+        for (int row = 0; row < dim; row++) {
+            for (int col = 0; col < dim; col++) {
                 Button btn = new Button("");
-                btn.setPrefHeight(100);
-                btn.setPrefWidth(100);
-                final int rows = row;
-                final int cols = col;
+                btn.setPrefHeight(side);
+                btn.setPrefWidth(side);
+                final int x = col;
+                final int y = row;
                 board[row][col] = btn;
-                btn.setOnAction(event -> model.toggleTile(rows, cols));
+                btn.setOnAction(event -> model.toggleTile(x, y));
                 btn.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
                 grid.add(btn, col, row);
             }
@@ -93,14 +127,21 @@ public class LightOutGUI extends Application implements Observer<LightsOutModel,
     }
 
     /**
-     * Creates a model and adds a view to the model
-     * @throws Exception
+     * Creates a model and adds a view to the model. The board size can be given as --size=N and the renderer as
+     * --renderer=buttons or --renderer=canvas.
+     * @throws IllegalArgumentException if the renderer is neither
      */
     @Override
     public void init() throws Exception {
         System.out.println("init: Initialize and connect to model!");
-        model = new LightsOutModel();
+        String size = getParameters().getNamed().get("size");
+        model = size == null ? new LightsOutModel() : new LightsOutModel(Integer.parseInt(size));
+        renderer = getParameters().getNamed().get("renderer");
+        if (renderer != null && !renderer.equals("buttons") && !renderer.equals("canvas")) {
+            throw new IllegalArgumentException("Unknown renderer " + renderer + ", expected buttons or canvas");
+        }
         model.addObserver(this);
+        model.setNotifier(Platform::runLater);
     }
 
     public static void main(String[] args) {
@@ -108,43 +149,68 @@ public class LightOutGUI extends Application implements Observer<LightsOutModel,
     }
 
     /**
-     * Updates the grid of lights after each move.
-     * Also updates the number of moves made and the message for different situations.
+     * Updates the lights that changed, the number of moves made and the message for different situations.
+     * A loaded board repaints every light, a toggle only the up to five lights it changed.
      * @param model the object that wishes to inform this object
      *                about something that has happened.
-     * @param msg optional data the server.model can send to the observer
+     * @param event what happened
      *
      */
     @Override
-    public void update(LightsOutModel model, String msg) {
-        for (int row = 0; row < 5; row++) {
-            for (int col = 0; col < 5; col++) {
-                Tile tile = model.getTile(row, col);
-                if (tile.isOn()) {
-                    board[row][col].setStyle("-fx-background-color: white;");
+    public void update(LightsOutModel model, ModelEvent event) {
+        switch (event.getKind()) {
+            case LOADED:
+                int dim = model.getDimension();
+                if (useCanvas(dim) != (canvas != null) || board != null && board.length != dim) {
+                    this.makeBoardPane(); //a loaded file can change the size
                 }
-                else {
-                    board[row][col].setStyle("-fx-background-color: black;");
+                if (canvas != null) {
+                    canvas.fit();
+                } else {
+                    for (int row = 0; row < dim; row++) {
+                        for (int col = 0; col < dim; col++) {
+                            paint(col, row);
+                        }
+                    }
                 }
-            }
-        }
-        moves.setText("Moves: " + model.getMoves());
-        message.setText("Message: " + msg);
-        if (msg.equals(LightsOutModel.LOADED)){
-            message.setText("Message: Game Loaded");
-            return;
-        }
-        else if (msg.equals(LightsOutModel.LOAD_FAILED)){
-            message.setText("Message: Error Loading Game");
-            return;
-        }
-        else if (msg.startsWith(LightsOutModel.HINT_PREFIX)) {
-            message.setText("Message: " + msg);
-            return;
+                moves.setText("Moves: " + model.getMoves());
+                message.setText("Message: Game Loaded");
+                break;
+            case LOAD_FAILED:
+                message.setText("Message: Error Loading Game (" + model.getLoadError() + ")");
+                break;
+            case TOGGLED:
+                if (canvas != null) {
+                    canvas.repaint(event);
+                } else {
+                    for (int i = 0; i < event.getChangedCount(); i++) {
+                        paint(event.getChangedX(i), event.getChangedY(i));
+                    }
+                }
+                moves.setText("Moves: " + model.getMoves());
+                message.setText("Message: " + event.getMessage());
+                break;
+            case HINT:
+                message.setText("Message: " + event.getMessage());
+                break;
+            case UNSOLVABLE:
+                message.setText("Message: This board cannot be solved");
+                break;
+            case HINT_TIMED_OUT:
+                message.setText("Message: No hint found in time, try another solver");
+                break;
+            case WON:
+                message.setText("Message: You Win!");
+                break;
         }
+    }
 
-        if (model.gameOver()) {
-            message.setText("Message: You Win!");
+    private void paint(int x, int y) {
+        if (model.getTile(x, y).isOn()) {
+            board[y][x].setStyle("-fx-background-color: white;");
+        }
+        else {
+            board[y][x].setStyle("-fx-background-color: black;");
         }
     }
 }
@@ -0,0 +1,226 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Solves a corpus of boards on every core. Boards are streamed from .lob files, binary {@link BoardCorpus} files,
+ * directories of either, or standard input,
+ * and at most a few boards per thread are held in memory at any time no matter how large the corpus is.
+ * <p>
+ * Prints one line per board (id, size, number of presses or "unsolvable", microseconds, then the presses as x,y pairs)
+ * in the order they finish, followed by throughput and latency statistics.
+ * <pre>
+ * model.BatchSolver [-mode AUTO|LINEAR|CHASE|TABLE|OPTIMAL|PARALLEL|ASTAR] [-threads N] [-quiet] (FILE | DIR | -)...
+ * </pre>
+ */
+class BatchSolver {
+    /**
+     * Boards allowed to wait for or be in a worker, per thread.
+     */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final SolverMode mode;
+    private final ForkJoinPool pool;
+    private final Semaphore inFlight;
+    private final int permits;
+    private final PrintStream out;
+    private final boolean quiet;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder solvable = new LongAdder();
+    private final LongAdder unsolvable = new LongAdder();
+    private final LongAdder presses = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    BatchSolver(SolverMode mode, int threads, PrintStream out, boolean quiet) {
+        this.mode = mode;
+        this.pool = new ForkJoinPool(threads);
+        this.permits = threads * IN_FLIGHT_PER_THREAD;
+        this.inFlight = new Semaphore(permits);
+        this.out = out;
+        this.quiet = quiet;
+    }
+
+    /**
+     * Queues every board of a source, blocking while too many boards are waiting.
+     * @param source a .lob file, a directory of .lob files, or "-" for standard input
+     */
+    void solveSource(String source) throws InterruptedException {
+        if (source.equals("-")) {
+            solveStream("stdin", Channels.newChannel(System.in));
+            return;
+        }
+        Path path = Paths.get(source);
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*.{lob,lobc}")) {
+                for (Path f : files) {
+                    solveFile(f);
+                }
+            } catch (IOException e) {
+                failed.increment();
+                System.err.println(path + ": " + e.getMessage());
+            }
+        } else {
+            solveFile(path);
+        }
+    }
+
+    private void solveFile(Path file) throws InterruptedException {
+        try {
+            if (file.toString().endsWith(BoardCorpus.EXTENSION)) {
+                BoardCorpus corpus = BoardCorpus.open(file);
+                for (int k = 0; k < corpus.count(); k++) {
+                    submit(file + "#" + k, corpus.get(k));
+                }
+                return;
+            }
+            solveStream(file.toString(), FileChannel.open(file));
+        } catch (IOException e) {
+            failed.increment();
+            System.err.println(file + ": " + e.getMessage());
+        }
+    }
+
+    private void solveStream(String name, ReadableByteChannel channel) throws InterruptedException {
+        try (LobReader in = new LobReader(channel)) {
+            Board b;
+            for (int k = 0; (b = in.next()) != null; k++) {
+                submit(name + "#" + k, b);
+            }
+        } catch (IOException e) {
+            failed.increment(); //the rest of this source can't be trusted
+            System.err.println(name + ": " + e.getMessage());
+        }
+    }
+
+    private void submit(String id, Board board) throws InterruptedException {
+        inFlight.acquire();
+        pool.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                Solution s = Solver.solve(board, mode);
+                long nanos = System.nanoTime() - start;
+                latency.record(nanos);
+                if (s.isSolvable()) {
+                    solvable.increment();
+                    presses.add(s.length());
+                } else {
+                    unsolvable.increment();
+                }
+                if (!quiet) {
+                    String line = describe(id, board.getSize(), s, nanos);
+                    synchronized (out) {
+                        out.println(line);
+                    }
+                }
+            } catch (RuntimeException | OutOfMemoryError e) {
+                failed.increment();
+                System.err.println(id + ": " + e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private static String describe(String id, int size, Solution s, long nanos) {
+        StringBuilder sb = new StringBuilder(id).append('\t').append(size).append('\t');
+        if (!s.isSolvable()) {
+            sb.append("unsolvable");
+        } else {
+            sb.append(s.length());
+        }
+        sb.append('\t').append(nanos / 1000);
+        if (s.isSolvable()) {
+            sb.append('\t');
+            for (Tile t : s.getPresses()) {
+                if (t.isOn()) {
+                    sb.append(t.getX()).append(',').append(t.getY()).append(' ');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Waits for every queued board to be solved.
+     */
+    void awaitAll() throws InterruptedException {
+        inFlight.acquire(permits);
+        inFlight.release(permits);
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    void printStats(PrintStream ps, long wallNanos) {
+        long boards = latency.count();
+        ps.printf("Boards: %d (solvable %d, unsolvable %d, failed %d)%n",
+                boards, solvable.sum(), unsolvable.sum(), failed.sum());
+        ps.printf("Wall time: %.3fs, throughput: %.1f boards/s on %d threads%n",
+                wallNanos / 1e9, boards / (wallNanos / 1e9), pool.getParallelism());
+        ps.printf("Latency us: mean %.1f, p50 %d, p90 %d, p99 %d, max %d%n",
+                latency.mean() / 1000, latency.percentile(50) / 1000, latency.percentile(90) / 1000,
+                latency.percentile(99) / 1000, latency.max() / 1000);
+        if (solvable.sum() > 0) {
+            ps.printf("Mean presses: %.2f%n", (double) presses.sum() / solvable.sum());
+        }
+    }
+
+    /**
+     * Runs a batch.
+     * @param args options then sources, see the class comment
+     */
+    public static void main(String[] args) throws InterruptedException {
+        SolverMode mode = SolverMode.AUTO;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean quiet = false;
+        int a = 0;
+        for (; a < args.length && args[a].startsWith("-") && !args[a].equals("-"); a++) {
+            switch (args[a]) {
+                case "-mode":
+                    mode = SolverMode.valueOf(args[++a].toUpperCase());
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++a]);
+                    break;
+                case "-quiet":
+                    quiet = true;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[a]);
+                    System.exit(2);
+            }
+        }
+        if (a == args.length) {
+            System.err.println("Usage: model.BatchSolver [-mode MODE] [-threads N] [-quiet] (FILE | DIR | -)...");
+            System.exit(2);
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        BatchSolver batch = new BatchSolver(mode, threads, out, quiet);
+        long start = System.nanoTime();
+        for (; a < args.length; a++) {
+            batch.solveSource(args[a]);
+        }
+        batch.awaitAll();
+        long wall = System.nanoTime() - start;
+        batch.shutdown();
+        out.flush();
+        batch.printStats(System.err, wall);
+    }
+}
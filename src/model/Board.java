@@ -1,33 +1,80 @@
 package model;
 
+import java.nio.LongBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * A board of NxN tiles. You will likely not need to interact with this directly.
+ * <p>
+ * The lights are stored as packed bits rather than as objects. Boards that fit in 64 cells use a single long
+ * (cell (x,y) is bit y*size+x) and a press is one XOR with a precomputed mask. Larger boards store one run of
+ * longs per row. {@link Tile}s handed out by the board are only views onto these bits.
  */
  class Board  implements Iterable<Tile>{
 
-    static final int BOARD_SIZE = 5;
-    private final Tile[][] tiles;
-     Board() {
-       tiles= new Tile[BOARD_SIZE][BOARD_SIZE];
-        for(int x = 0; x < Board.BOARD_SIZE; x++){
-            for(int y = 0; y < Board.BOARD_SIZE; y++){
-                tiles[x][y]= new Tile(x,y,this,false);
+    /**
+     * The side length of the classic game.
+     */
+    static final int DEFAULT_SIZE = 5;
+    /**
+     * The largest side length whose cells all fit into a single long.
+     */
+    static final int PACKED_LIMIT = 8;
+    /**
+     * Press masks for the single long layout, indexed by side length then by cell. Built when the class is loaded, so
+     * every thread sees them complete.
+     */
+    private static final long[][] TOGGLE_MASKS = new long[PACKED_LIMIT + 1][];
+
+    static {
+        for (int size = 1; size <= PACKED_LIMIT; size++) {
+            long[] masks = new long[size * size];
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int i = y * size + x;
+                    long m = 1L << i;
+                    if (x > 0) m |= 1L << (i - 1);
+                    if (x < size - 1) m |= 1L << (i + 1);
+                    if (y > 0) m |= 1L << (i - size);
+                    if (y < size - 1) m |= 1L << (i + size);
+                    masks[i] = m;
+                }
             }
+            TOGGLE_MASKS[size] = masks;
         }
     }
 
-     Board(Board b){
-        this(); // init array
-       //deep copy
-        for(int x = 0; x < Board.BOARD_SIZE; x++){
-            for(int y = 0; y < Board.BOARD_SIZE; y++){
-                tiles[x][y].setOn(b.tiles[x][y].isOn());
-            }
+    private final int size;
+    private final int rowWords;
+    private long bits;
+    private final long[] rows;
+
+     Board() {
+        this(DEFAULT_SIZE);
+    }
+
+     Board(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Board size must be positive: " + size);
         }
+        this.size = size;
+        if (size <= PACKED_LIMIT) {
+            rowWords = 0;
+            rows = null;
+        } else {
+            rowWords = (size + 63) >>> 6;
+            rows = new long[size * rowWords];
+        }
+    }
 
+     Board(Board b){
+        //a word copy is a deep copy
+        size = b.size;
+        rowWords = b.rowWords;
+        bits = b.bits;
+        rows = b.rows == null ? null : b.rows.clone();
     }
 
     public static void main(String[] args) {
@@ -45,17 +92,318 @@ import java.util.Iterator;
         }
     }
 
-    Tile[][] getTiles() {
-        return tiles;
-
+    /**
+     * @return the side length of this board
+     */
+    int getSize() {
+        return size;
     }
 
     Tile getTile(int x, int y) {
-            return tiles[x][y];
+        checkBounds(x, y);
+        return new Tile(x, y, this);
+    }
+
+    boolean isOn(int x, int y) {
+        checkBounds(x, y);
+        if (rows == null) {
+            return (bits >>> (y * size + x) & 1L) != 0;
+        }
+        return (rows[y * rowWords + (x >>> 6)] >>> x & 1L) != 0;
+    }
+
+    void setOn(int x, int y, boolean on) {
+        if (isOn(x, y) != on) {
+            flip(x, y);
+        }
     }
 
+    /**
+     * Flips a single light without touching its neighbors.
+     */
+    void flip(int x, int y) {
+        checkBounds(x, y);
+        if (rows == null) {
+            bits ^= 1L << (y * size + x);
+        } else {
+            rows[y * rowWords + (x >>> 6)] ^= 1L << x;
+        }
+    }
+
+    /**
+     * Presses the tile at (x,y), flipping it and its orthogonal neighbors.
+     */
     void toggleTile(int x, int y) {
-        getTile(x, y).toggle();
+        checkBounds(x, y);
+        if (rows == null) {
+            bits ^= toggleMasks(size)[y * size + x];
+            return;
+        }
+        int word = x >>> 6;
+        long bit = 1L << x;
+        int row = y * rowWords;
+        rows[row + word] ^= bit;
+        if (x > 0) {
+            rows[row + ((x - 1) >>> 6)] ^= 1L << (x - 1);
+        }
+        if (x < size - 1) {
+            rows[row + ((x + 1) >>> 6)] ^= 1L << (x + 1);
+        }
+        if (y > 0) {
+            rows[row - rowWords + word] ^= bit;
+        }
+        if (y < size - 1) {
+            rows[row + rowWords + word] ^= bit;
+        }
+    }
+
+    /**
+     * Presses the tile at (x,y) like {@link #toggleTile(int, int)}, for callers keeping a count of lit tiles.
+     * @return how much the number of lit tiles changed, between -5 and 5
+     */
+    int toggleTileCounting(int x, int y) {
+        checkBounds(x, y);
+        int before = countAround(x, y);
+        toggleTile(x, y);
+        return countAround(x, y) - before;
+    }
+
+    /**
+     * @return the number of lit tiles among (x,y) and its orthogonal neighbors
+     */
+    private int countAround(int x, int y) {
+        if (rows == null) {
+            return Long.bitCount(bits & toggleMasks(size)[y * size + x]);
+        }
+        int count = isOn(x, y) ? 1 : 0;
+        if (x > 0 && isOn(x - 1, y)) {
+            count++;
+        }
+        if (x < size - 1 && isOn(x + 1, y)) {
+            count++;
+        }
+        if (y > 0 && isOn(x, y - 1)) {
+            count++;
+        }
+        if (y < size - 1 && isOn(x, y + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of lit tiles
+     */
+    int countOn() {
+        if (rows == null) {
+            return Long.bitCount(bits);
+        }
+        int count = 0;
+        for (long w : rows) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+
+    /**
+     * @return true iff every light is off
+     */
+    boolean isClear() {
+        if (rows == null) {
+            return bits == 0;
+        }
+        for (long w : rows) {
+            if (w != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Turns every light off.
+     */
+    void clear() {
+        bits = 0;
+        if (rows != null) {
+            Arrays.fill(rows, 0);
+        }
+    }
+
+    /**
+     * Finds the first lit tile, scanning left to right and top to bottom.
+     * @return y*size+x of the first lit tile, or -1 if every light is off
+     */
+    int firstOn() {
+        if (rows == null) {
+            return bits == 0 ? -1 : Long.numberOfTrailingZeros(bits);
+        }
+        for (int w = 0; w < rows.length; w++) {
+            if (rows[w] != 0) {
+                int x = (w % rowWords) * 64 + Long.numberOfTrailingZeros(rows[w]);
+                return (w / rowWords) * size + x;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the lights of a board of at most {@link #PACKED_LIMIT} tiles per side, tile (x,y) is bit y*size+x
+     */
+    long getBits() {
+        if (rows != null) {
+            throw new IllegalStateException("A " + size + "x" + size + " board does not fit in a long");
+        }
+        return bits;
+    }
+
+    /**
+     * Packs the lights into a vector where cell (x,y) is bit y*size+x.
+     * @return a freshly allocated vector of ceil(size*size/64) words
+     */
+    long[] toVector() {
+        if (rows == null) {
+            return new long[]{bits};
+        }
+        long[] v = new long[(size * size + 63) >>> 6];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (isOn(x, y)) {
+                    int i = y * size + x;
+                    v[i >>> 6] |= 1L << i;
+                }
+            }
+        }
+        return v;
+    }
+
+    /**
+     * The inverse of {@link #toVector()}.
+     */
+    static Board fromVector(int size, long[] v) {
+        Board b = new Board(size);
+        if (b.rows == null) {
+            b.bits = v[0];
+            return b;
+        }
+        for (int i = 0; i < size * size; i++) {
+            if ((v[i >>> 6] >>> i & 1L) != 0) {
+                b.flip(i % size, i / size);
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Copies the lights out row by row; tile (x,y) is bit x of row y.
+     * @return size rows of ceil(size/64) words each
+     */
+    long[][] toRows() {
+        int words = (size + 63) >>> 6;
+        long[][] ret = new long[size][];
+        if (rows == null) {
+            long mask = (1L << size) - 1;
+            for (int y = 0; y < size; y++) {
+                ret[y] = new long[]{bits >>> (y * size) & mask};
+            }
+        } else {
+            for (int y = 0; y < size; y++) {
+                ret[y] = Arrays.copyOfRange(rows, y * rowWords, y * rowWords + words);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Copies one row of lights without allocating; tile (x,y) is bit x.
+     * @param y the row
+     * @param dest receives the row, at least ceil(size/64) longs
+     */
+    void getRow(int y, long[] dest) {
+        checkBounds(0, y);
+        if (rows == null) {
+            dest[0] = bits >>> (y * size) & ((1L << size) - 1);
+        } else {
+            System.arraycopy(rows, y * rowWords, dest, 0, rowWords);
+        }
+    }
+
+    /**
+     * The inverse of {@link #toRows()}.
+     */
+    static Board fromRows(int size, long[][] r) {
+        Board b = new Board(size);
+        for (int y = 0; y < size; y++) {
+            b.setRow(y, r[y]);
+        }
+        return b;
+    }
+
+    /**
+     * Replaces a whole row of lights.
+     * @param y the row
+     * @param words the lights of the row, tile (x,y) is bit x; bits past the edge of the board must be clear
+     */
+    void setRow(int y, long[] words) {
+        checkBounds(0, y);
+        if (rows == null) {
+            long mask = (1L << size) - 1;
+            int shift = y * size;
+            bits = bits & ~(mask << shift) | (words[0] & mask) << shift;
+        } else {
+            System.arraycopy(words, 0, rows, y * rowWords, rowWords);
+        }
+    }
+
+    /**
+     * @return how many longs {@link #storeWords(LongBuffer)} writes for this board
+     */
+    int wordCount() {
+        return rows == null ? 1 : rows.length;
+    }
+
+    /**
+     * @return how many longs {@link #storeWords(LongBuffer)} writes for a board of the given side length
+     */
+    static int wordCount(int size) {
+        return size <= PACKED_LIMIT ? 1 : size * ((size + 63) >>> 6);
+    }
+
+    /**
+     * Writes the lights exactly as they are held in memory.
+     */
+    void storeWords(LongBuffer out) {
+        if (rows == null) {
+            out.put(bits);
+        } else {
+            out.put(rows);
+        }
+    }
+
+    /**
+     * The inverse of {@link #storeWords(LongBuffer)}: one bulk copy of {@link #wordCount()} longs.
+     */
+    static Board loadWords(int size, LongBuffer in) {
+        Board b = new Board(size);
+        if (b.rows == null) {
+            b.bits = in.get();
+        } else {
+            in.get(b.rows);
+        }
+        return b;
+    }
+
+    private void checkBounds(int x, int y) {
+        if (x < 0 || x >= size || y < 0 || y >= size) {
+            throw new IndexOutOfBoundsException("(" + x + "," + y + ") is not on a " + size + "x" + size + " board");
+        }
+    }
+
+    /**
+     * @return the press mask of every cell for the single long layout, shared so callers must not modify it
+     */
+    static long[] toggleMasks(int size) {
+        return TOGGLE_MASKS[size];
     }
 
     @Override
@@ -67,31 +415,16 @@ import java.util.Iterator;
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        Board tiles1 = (Board) o;
-        for( int x = 0; x <BOARD_SIZE; x ++){
-            for( int y = 0; y <BOARD_SIZE; y ++){
-                //System.out.println(tiles1.tiles[x][y]+" : "+tiles[x][y]);
-                if (tiles1.tiles[x][y].isOn() != tiles[x][y].isOn()){
-
-                    return false;
-                }
-
-            }
-        }
-        return true;
+        Board other = (Board) o;
+        return size == other.size && bits == other.bits && Arrays.equals(rows, other.rows);
     }
 
     @Override
     public int hashCode() {
-        if(tiles == null){
-            return 0;
+        if (rows == null) {
+            return 31 * size + Long.hashCode(bits);
         }
-        int ret = 1;
-        for(int row = 0; row<BOARD_SIZE; row++) {
-            //System.out.println(Arrays.hashCode(tiles[row]));
-            ret += 31 * ret + Arrays.hashCode(tiles[row]);
-        }
-        return ret;
+        return 31 * size + Arrays.hashCode(rows);
     }
 
     /**
@@ -108,22 +441,22 @@ import java.util.Iterator;
 
         @Override
         public Tile next() {
-            if (x>=BOARD_SIZE-1 ){
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (x>=size-1 ){
                 y += 1;
                 x=0;
             }else{
                 x+=1;
             }
-           // System.out.printf("%d,%d",x,y);
-            return tiles[x][y];
+            return new Tile(x, y, Board.this);
         }
 
         @Override
         public boolean hasNext() {
-            //System.out.printf("HAS NEXT: %2$d < %1$d %3$d < %1$d%n",BOARD_SIZE,x,y);
-            return x<BOARD_SIZE-1 || y<BOARD_SIZE-1;
+            return x<size-1 || y<size-1;
         }
 
     }
 }
-
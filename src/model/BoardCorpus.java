@@ -0,0 +1,271 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+/**
+ * A binary file of many bit-packed boards with an index, so any board can be read by number. Files end in
+ * {@value #EXTENSION}.
+ * <p>
+ * Layout, little endian: a 24 byte header (magic, version, board count, offset of the index), then for each board an
+ * 8 byte header holding its size followed by its lights in {@link Board}'s own word layout, then the index of one
+ * 8 byte offset per board. The file is memory mapped, so reading board k touches only its index entry and its words,
+ * which are copied into the new board in one bulk copy. Files are limited to 2GB. The mapping is released by the
+ * garbage collector once the corpus is no longer referenced.
+ * <pre>
+ * model.BoardCorpus pack OUT.lobc (FILE.lob | DIR)...
+ * model.BoardCorpus unpack IN.lobc OUT.lob
+ * </pre>
+ */
+class BoardCorpus {
+    static final String EXTENSION = ".lobc";
+
+    private static final int MAGIC = 0x434C4F4C; // LOLC
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    private final Path file;
+    private final MappedByteBuffer map;
+    private final int count;
+    private final int indexOffset;
+    /**
+     * The modification time of the file when it was mapped.
+     */
+    private final FileTime modified;
+
+    private BoardCorpus(Path file, MappedByteBuffer map, int count, int indexOffset, FileTime modified) {
+        this.file = file;
+        this.map = map;
+        this.count = count;
+        this.indexOffset = indexOffset;
+        this.modified = modified;
+    }
+
+    /**
+     * Maps a corpus.
+     * @throws IOException if the file can't be read or is not a corpus
+     */
+    static BoardCorpus open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            FileTime modified = Files.getLastModifiedTime(file);
+            long length = ch.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2GB");
+            }
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (length < HEADER_BYTES || map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                throw new BoardFormatException(file + " is not a board corpus");
+            }
+            long count = map.getLong(8);
+            long indexOffset = map.getLong(16);
+            if (count < 0 || count > Integer.MAX_VALUE || indexOffset < HEADER_BYTES
+                    || indexOffset + 8 * count != length) {
+                throw new BoardFormatException(file + " is corrupt");
+            }
+            return new BoardCorpus(file, map, (int) count, (int) indexOffset, modified);
+        }
+    }
+
+    /**
+     * Tells whether the file still is what was mapped. A corpus that was rewritten or truncated since must be opened
+     * again: the old mapping shows stale boards, or faults on pages past the new end of the file.
+     * @return true iff the file has the size and modification time it had when mapped
+     */
+    boolean isCurrent() {
+        try {
+            return Files.size(file) == map.capacity() && Files.getLastModifiedTime(file).equals(modified);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return how many boards the corpus holds
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return the side length of board k, without reading its lights
+     * @throws BoardFormatException if the index entry of board k is corrupt
+     */
+    int sizeOf(int k) throws BoardFormatException {
+        return map.getInt(offsetOf(k));
+    }
+
+    /**
+     * Reads board k.
+     * @param k the board number, starting at 0
+     * @return a new board
+     * @throws BoardFormatException if board k or its index entry is corrupt
+     */
+    Board get(int k) throws BoardFormatException {
+        int offset = offsetOf(k);
+        int size = map.getInt(offset);
+        if (size < 1 || size > LightsOutModel.MAX_DIMENSION) {
+            throw new BoardFormatException("Board " + k + " of " + file + " has size " + size);
+        }
+        int bytes = 8 * Board.wordCount(size);
+        if (bytes > indexOffset - offset - 8) {
+            throw new BoardFormatException("Board " + k + " of " + file + " runs into the index");
+        }
+        LongBuffer words = map.slice(offset + 8, bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        return Board.loadWords(size, words);
+    }
+
+    /**
+     * @return where board k starts, checked to leave room for its header before the index
+     */
+    private int offsetOf(int k) throws BoardFormatException {
+        if (k < 0 || k >= count) {
+            throw new IndexOutOfBoundsException("Board " + k + " of " + count + " in " + file);
+        }
+        long offset = map.getLong(indexOffset + 8 * k);
+        if (offset < HEADER_BYTES || offset > indexOffset - 8) {
+            throw new BoardFormatException("The index entry of board " + k + " of " + file + " is corrupt");
+        }
+        return (int) offset;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Appends boards to a new corpus file. The index is written on close.
+     */
+    static class Writer implements Closeable {
+        private final FileChannel ch;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long[] offsets = new long[1024];
+        private int count;
+        private long position = HEADER_BYTES;
+
+        Writer(Path file) throws IOException {
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ch.position(HEADER_BYTES);
+        }
+
+        void add(Board b) throws IOException {
+            int bytes = 8 + 8 * b.wordCount();
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = position;
+            position += bytes;
+            buffer.putInt(b.getSize()).putInt(0);
+            LongBuffer words = buffer.asLongBuffer();
+            b.storeWords(words);
+            buffer.position(buffer.position() + 8 * b.wordCount());
+        }
+
+        int count() {
+            return count;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                ch.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                for (int k = 0; k < count; k++) {
+                    if (buffer.remaining() < 8) {
+                        flush();
+                    }
+                    buffer.putLong(offsets[k]);
+                }
+                flush();
+                buffer.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(position);
+                buffer.flip();
+                ch.write(buffer, 0);
+            } finally {
+                ch.close();
+            }
+        }
+    }
+
+    /**
+     * Packs .lob files, or directories of them, into one corpus.
+     * @return the number of boards written
+     */
+    static int pack(Path out, Path... sources) throws IOException {
+        try (Writer w = new Writer(out)) {
+            for (Path source : sources) {
+                if (Files.isDirectory(source)) {
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(source, "*.lob")) {
+                        for (Path f : files) {
+                            packFile(w, f);
+                        }
+                    }
+                } else {
+                    packFile(w, source);
+                }
+            }
+            return w.count();
+        }
+    }
+
+    private static void packFile(Writer w, Path lob) throws IOException {
+        try (LobReader in = new LobReader(FileChannel.open(lob))) {
+            for (Board b = in.next(); b != null; b = in.next()) {
+                w.add(b);
+            }
+        }
+    }
+
+    /**
+     * Writes every board of a corpus to one .lob file, separated by blank lines.
+     */
+    static void unpack(Path corpus, Path out) throws IOException {
+        BoardCorpus c = open(corpus);
+        try (LobWriter w = new LobWriter(Files.newBufferedWriter(out))) {
+            for (int k = 0; k < c.count(); k++) {
+                w.write(c.get(k));
+            }
+        }
+    }
+
+    /**
+     * Converts between .lob files and corpora, see the class comment.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("pack")) {
+            Path[] sources = new Path[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                sources[i - 2] = Paths.get(args[i]);
+            }
+            int n = pack(Paths.get(args[1]), sources);
+            System.out.println("Packed " + n + " boards into " + args[1]);
+        } else if (args.length == 3 && args[0].equals("unpack")) {
+            unpack(Paths.get(args[1]), Paths.get(args[2]));
+        } else {
+            System.err.println("Usage: model.BoardCorpus pack OUT" + EXTENSION + " (FILE.lob | DIR)...");
+            System.err.println("       model.BoardCorpus unpack IN" + EXTENSION + " OUT.lob");
+            System.exit(2);
+        }
+    }
+}
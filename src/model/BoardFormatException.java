@@ -0,0 +1,49 @@
+package model;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a board file is not in the .lob format, or a {@link BoardCorpus} is corrupt. Lines and columns are
+ * counted from 1; a corpus has neither, so both are 0.
+ */
+public class BoardFormatException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+    private final int column;
+
+    /**
+     * @param message what is wrong
+     * @param line the line of the problem
+     * @param column the column of the problem
+     */
+    public BoardFormatException(String message, int line, int column) {
+        super(message + " at line " + line + ", column " + column);
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * For binary files, which have no lines.
+     * @param message what is wrong
+     */
+    public BoardFormatException(String message) {
+        super(message);
+        this.line = 0;
+        this.column = 0;
+    }
+
+    /**
+     * @return the line the problem was found on
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the column the problem was found at
+     */
+    public int getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,323 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Makes random boards that can always be turned off, straight from random press vectors. Pressing a uniformly random
+ * set of tiles gives every solvable board with the same probability, since each is reached by the same number of
+ * press sets (2^nullity of them). The lights of a press set are computed a whole row at a time: each pressed tile
+ * toggles itself, its left and right neighbors (a shift of the row) and the tiles above and below (the neighboring
+ * rows), so a board costs O(size^2/64) word operations and no per-tile work. Boards of at most
+ * {@link Board#PACKED_LIMIT} a side take a handful of shifts on one long.
+ * <p>
+ * Generators are seeded for reproducible runs, and {@link #split()} gives independent generators for other threads.
+ * <pre>
+ * model.BoardGenerator [-seed S] [-size N] [-presses K | -difficulty MIN[-MAX]] COUNT (OUT.lobc | OUT.lob | -)
+ * </pre>
+ */
+class BoardGenerator {
+    private final int size;
+    private final SplittableRandom rng;
+
+    // packed layout
+    private final long cellMask;
+    private final long firstColumn;
+    private final long lastColumn;
+
+    // row layout
+    private final int words;
+    private final long lastMask;
+    private final long[][] presses;
+    private final long[] lights;
+
+    /**
+     * @param size the side length of the boards
+     * @param seed the same seed gives the same boards
+     */
+    BoardGenerator(int size, long seed) {
+        this(size, new SplittableRandom(seed));
+    }
+
+    /**
+     * A generator with a random seed.
+     */
+    BoardGenerator(int size) {
+        this(size, new SplittableRandom());
+    }
+
+    private BoardGenerator(int size, SplittableRandom rng) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Board size must be positive: " + size);
+        }
+        this.size = size;
+        this.rng = rng;
+        int cells = size * size;
+        cellMask = cells == 64 ? -1L : (1L << cells) - 1;
+        long first = 0;
+        for (int y = 0; y < size && size <= Board.PACKED_LIMIT; y++) {
+            first |= 1L << (y * size);
+        }
+        firstColumn = first;
+        lastColumn = first << (size - 1);
+        words = (size + 63) >>> 6;
+        lastMask = (size & 63) == 0 ? -1L : (1L << size) - 1;
+        presses = size <= Board.PACKED_LIMIT ? null : new long[size][words];
+        lights = size <= Board.PACKED_LIMIT ? null : new long[words];
+    }
+
+    /**
+     * @return a generator for other threads whose boards are independent of this one's
+     */
+    BoardGenerator split() {
+        return new BoardGenerator(size, rng.split());
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * A uniformly random solvable board for sizes up to {@link Board#PACKED_LIMIT}, without allocating.
+     * @return the lights, tile (x,y) is bit y*size+x
+     */
+    long nextBits() {
+        return lightsOf(rng.nextLong() & cellMask);
+    }
+
+    /**
+     * @return a new uniformly random solvable board
+     */
+    Board next() {
+        if (presses == null) {
+            return Board.fromVector(size, new long[]{nextBits()});
+        }
+        for (long[] row : presses) {
+            for (int w = 0; w < words; w++) {
+                row[w] = rng.nextLong();
+            }
+            row[words - 1] &= lastMask;
+        }
+        return lightsOf(presses);
+    }
+
+    /**
+     * Presses distinct random tiles on a dark board, for boards that are only a few presses from solved.
+     * @param count how many tiles to press, at most size^2
+     * @return a new board
+     */
+    Board next(int count) {
+        int cells = size * size;
+        if (count < 0 || count > cells) {
+            throw new IllegalArgumentException("Can't press " + count + " of " + cells + " tiles");
+        }
+        long[] p = new long[(cells + 63) >>> 6];
+        pressDistinct(count, p, new LongSet());
+        return boardPressing(p);
+    }
+
+    /**
+     * Sets count distinct random bits of a press vector with Floyd's sampling: count draws and no list of tiles.
+     */
+    private void pressDistinct(int count, long[] p, LongSet chosen) {
+        int cells = size * size;
+        for (int j = cells - count; j < cells; j++) {
+            int t = rng.nextInt(j + 1);
+            int cell = chosen.contains(t) ? j : t;
+            chosen.add(cell);
+            p[cell >>> 6] |= 1L << cell;
+        }
+    }
+
+    /**
+     * A random board whose shortest solution is exactly the given number of presses, for puzzles of a known
+     * difficulty. Presses are drawn with that many tiles and kept if no combination with the quiet patterns (see
+     * {@link LinearSolver#shortestEquivalent(long[])}) is shorter. Long targets rarely pass that test, so after a few
+     * tries the presses are instead grown one random tile at a time and shortened after each, until they reach the
+     * target. No search of boards is involved.
+     * @param k the number of presses the board must need
+     * @return a new board
+     * @throws IllegalArgumentException if the size is over {@link LinearSolver#MAX_SIZE}, its null space is too large
+     * to search, or no board of this size needs k presses
+     */
+    Board withMinimumPresses(int k) {
+        LinearSolver solver = LinearSolver.forSize(size);
+        int cells = size * size;
+        if (k < 0 || k > cells) {
+            throw new IllegalArgumentException("A " + size + "x" + size + " board can't need " + k + " presses");
+        }
+        long[] p = new long[(cells + 63) >>> 6];
+        LongSet chosen = new LongSet();
+        for (int attempt = 0; attempt < 16; attempt++) {
+            Arrays.fill(p, 0);
+            chosen.clear();
+            pressDistinct(k, p, chosen);
+            if (Elimination.count(solver.shortestEquivalent(p)) == k) {
+                return boardPressing(p);
+            }
+        }
+        Arrays.fill(p, 0);
+        int count = 0;
+        for (int step = 0; step < 64 * cells && count < k; step++) {
+            int cell = rng.nextInt(cells);
+            if ((p[cell >>> 6] >>> cell & 1L) != 0) {
+                continue;
+            }
+            p[cell >>> 6] |= 1L << cell;
+            p = solver.shortestEquivalent(p).clone();
+            count = Elimination.count(p);
+        }
+        if (count != k) {
+            throw new IllegalArgumentException("Found no " + size + "x" + size + " board that needs " + k + " presses");
+        }
+        return boardPressing(p);
+    }
+
+    /**
+     * A random board whose shortest solution takes between min and max presses, each length equally likely.
+     * @see #withMinimumPresses(int)
+     */
+    Board withMinimumPresses(int min, int max) {
+        if (min > max) {
+            throw new IllegalArgumentException("Empty range " + min + ".." + max);
+        }
+        return withMinimumPresses(min + rng.nextInt(max - min + 1));
+    }
+
+    /**
+     * @param p presses as a vector, bit y*size+x
+     * @return the lights they leave on a dark board
+     */
+    private Board boardPressing(long[] p) {
+        if (presses == null) {
+            return Board.fromVector(size, new long[]{lightsOf(p[0])});
+        }
+        for (long[] row : presses) {
+            Arrays.fill(row, 0);
+        }
+        for (int w = 0; w < p.length; w++) {
+            for (long bits = p[w]; bits != 0; bits &= bits - 1) {
+                int cell = w * 64 + Long.numberOfTrailingZeros(bits);
+                int x = cell % size;
+                presses[cell / size][x >>> 6] |= 1L << x;
+            }
+        }
+        return lightsOf(presses);
+    }
+
+    /**
+     * @param p pressed tiles in the packed layout
+     * @return the lights they turn on on a dark board
+     */
+    private long lightsOf(long p) {
+        long l = p
+                ^ (p << 1 & ~firstColumn)
+                ^ (p >>> 1 & ~lastColumn)
+                ^ p << size
+                ^ p >>> size;
+        return l & cellMask;
+    }
+
+    private Board lightsOf(long[][] p) {
+        Board b = new Board(size);
+        for (int y = 0; y < size; y++) {
+            long[] row = p[y];
+            long carryLeft = 0;
+            for (int w = 0; w < words; w++) {
+                long right = w + 1 < words ? p[y][w + 1] : 0;
+                // x-1 and x+1 neighbors: shift the row by one bit either way across word boundaries
+                long l = row[w] ^ (row[w] << 1 | carryLeft) ^ (row[w] >>> 1 | right << 63);
+                carryLeft = row[w] >>> 63;
+                if (y > 0) {
+                    l ^= p[y - 1][w];
+                }
+                if (y < size - 1) {
+                    l ^= p[y + 1][w];
+                }
+                lights[w] = l;
+            }
+            lights[words - 1] &= lastMask;
+            b.setRow(y, lights);
+        }
+        return b;
+    }
+
+    private Board next(int pressCount, int minPresses, int maxPresses) {
+        if (minPresses >= 0) {
+            return withMinimumPresses(minPresses, maxPresses);
+        }
+        return pressCount < 0 ? next() : next(pressCount);
+    }
+
+    /**
+     * Writes random boards to a corpus, a .lob file, or standard output as .lob text.
+     * @param args options, the number of boards and where to write them, see the class comment
+     */
+    public static void main(String[] args) throws IOException {
+        int size = Board.DEFAULT_SIZE;
+        long seed = System.nanoTime();
+        int pressCount = -1;
+        int minPresses = -1;
+        int maxPresses = -1;
+        int a = 0;
+        try {
+            for (; a < args.length - 2; a++) {
+                switch (args[a]) {
+                    case "-seed":
+                        seed = Long.parseLong(args[++a]);
+                        break;
+                    case "-size":
+                        size = Integer.parseInt(args[++a]);
+                        break;
+                    case "-presses":
+                        pressCount = Integer.parseInt(args[++a]);
+                        break;
+                    case "-difficulty":
+                        String[] range = args[++a].split("-", 2);
+                        minPresses = Integer.parseInt(range[0]);
+                        maxPresses = range.length == 2 ? Integer.parseInt(range[1]) : minPresses;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[a]);
+                }
+            }
+            if (a != args.length - 2) {
+                throw new IllegalArgumentException("Expected a count and an output");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: model.BoardGenerator [-seed S] [-size N] [-presses K | -difficulty MIN[-MAX]] COUNT (OUT"
+                    + BoardCorpus.EXTENSION + " | OUT.lob | -)");
+            System.exit(2);
+        }
+        long count = Long.parseLong(args[a]);
+        String out = args[a + 1];
+        BoardGenerator gen = new BoardGenerator(size, seed);
+
+        long start = System.nanoTime();
+        if (out.endsWith(BoardCorpus.EXTENSION)) {
+            try (BoardCorpus.Writer w = new BoardCorpus.Writer(Paths.get(out))) {
+                for (long k = 0; k < count; k++) {
+                    w.add(gen.next(pressCount, minPresses, maxPresses));
+                }
+            }
+        } else {
+            BufferedWriter text = out.equals("-")
+                    ? new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16)
+                    : Files.newBufferedWriter(Paths.get(out));
+            try (LobWriter w = new LobWriter(text)) {
+                for (long k = 0; k < count; k++) {
+                    w.write(gen.next(pressCount, minPresses, maxPresses));
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Wrote %d %dx%d boards (seed %d) in %.3fs, %.0f boards/s%n",
+                count, size, size, seed, seconds, count / seconds);
+    }
+}
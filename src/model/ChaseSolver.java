@@ -0,0 +1,142 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Solves a board by chasing the lights: each lit tile in a row is cleared by pressing the tile below it, which pushes
+ * every light down to the bottom row. Which lights are left there is an affine function of the presses made on the
+ * top row, so the top row that clears the bottom is found from a small per-size matrix (top row presses to bottom
+ * residue) that is built and eliminated once and cached. Rows are handled as bit vectors, so a chase costs
+ * O(size^2/64) word operations.
+ */
+class ChaseSolver {
+    private static final Map<Integer, ChaseSolver> CACHE = new ConcurrentHashMap<>();
+
+    private final int size;
+    private final int words;
+    private final long lastMask;
+    /**
+     * Elimination of the matrix mapping top row presses to the bottom row they leave lit on a dark board.
+     */
+    private final Elimination topRow;
+
+    private ChaseSolver(int size) {
+        FlightEvents.Phase event = new FlightEvents.Phase();
+        event.begin();
+        this.size = size;
+        words = (size + 63) >>> 6;
+        lastMask = (size & 63) == 0 ? -1L : (1L << size) - 1;
+
+        long[][] residue = new long[size][words];
+        long[][] rows = new long[size][words];
+        long[] top = new long[words];
+        long[] scratch = new long[words];
+        for (int j = 0; j < size; j++) {
+            for (long[] r : rows) {
+                Arrays.fill(r, 0);
+            }
+            top[j >>> 6] = 1L << j;
+            chase(rows, top, null, scratch);
+            top[j >>> 6] = 0;
+            long[] bottom = rows[size - 1];
+            for (int i = 0; i < size; i++) {
+                if ((bottom[i >>> 6] >>> i & 1L) != 0) {
+                    residue[i][j >>> 6] |= 1L << j; //column j of the matrix
+                }
+            }
+        }
+        topRow = new Elimination(residue);
+        FlightEvents.phase(event, "chase table", size);
+    }
+
+    /**
+     * Gets the solver for a board size, building its top row lookup the first time that size is seen.
+     * @param size side length of the board
+     * @return the shared solver for that size
+     */
+    static ChaseSolver forSize(int size) {
+        ChaseSolver cached = CACHE.get(size);
+        SolverMetrics.recordCacheLookup(cached != null);
+        return cached != null ? cached : CACHE.computeIfAbsent(size, ChaseSolver::new);
+    }
+
+    /**
+     * Solves a board with two chases: one to find what reaches the bottom row, one with the corrected top row.
+     * The solution is not necessarily the shortest one.
+     * @param board the board to turn off; it is not modified
+     * @return the presses, or {@link Solution#UNSOLVABLE}
+     */
+    Solution solve(Board board) {
+        long[][] rows = board.toRows();
+        long[] scratch = new long[words];
+        chase(rows, new long[words], null, scratch);
+        long[] top = topRow.solve(rows[size - 1]);
+        if (top == null) {
+            return Solution.UNSOLVABLE;
+        }
+        rows = board.toRows();
+        long[][] presses = new long[size][words];
+        chase(rows, top, presses, scratch);
+        return new Solution(Board.fromRows(size, presses));
+    }
+
+    /**
+     * @return true iff the board can be turned off; costs a single chase
+     */
+    boolean isSolvable(Board board) {
+        long[][] rows = board.toRows();
+        chase(rows, new long[words], null, new long[words]);
+        return topRow.isSolvable(rows[size - 1]);
+    }
+
+    /**
+     * Presses top on row 0, then clears every row by pressing beneath it. Afterwards only the bottom row can be lit.
+     * @param rows the lights, modified in place
+     * @param top presses for row 0
+     * @param presses receives every press made, may be null
+     * @param scratch a buffer of one row
+     */
+    private void chase(long[][] rows, long[] top, long[][] presses, long[] scratch) {
+        press(rows, 0, top);
+        if (presses != null) {
+            System.arraycopy(top, 0, presses[0], 0, words);
+        }
+        for (int y = 1; y < size; y++) {
+            long[] p = presses != null ? presses[y] : scratch;
+            System.arraycopy(rows[y - 1], 0, p, 0, words);
+            press(rows, y, p);
+        }
+    }
+
+    /**
+     * Presses every tile of row y whose bit is set in p.
+     */
+    private void press(long[][] rows, int y, long[] p) {
+        long[] row = rows[y];
+        for (int w = 0; w < words; w++) {
+            long left = p[w] << 1 | (w > 0 ? p[w - 1] >>> 63 : 0);
+            long right = p[w] >>> 1 | (w < words - 1 ? p[w + 1] << 63 : 0);
+            row[w] ^= p[w] ^ left ^ right;
+        }
+        row[words - 1] &= lastMask;
+        if (y > 0) {
+            Elimination.xor(rows[y - 1], p);
+        }
+        if (y < size - 1) {
+            Elimination.xor(rows[y + 1], p);
+        }
+    }
+
+    /**
+     * @return the dimension of the null space of the toggle matrix for this size
+     */
+    int nullity() {
+        return topRow.nullBasis().length;
+    }
+
+    int getSize() {
+        return size;
+    }
+}
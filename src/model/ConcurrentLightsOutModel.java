@@ -0,0 +1,438 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A game many players can press at once, for collaborative play: any number of threads may call any method at the
+ * same time, and no method takes a lock.
+ * <p>
+ * The lights live in atomic words in the layout of {@link Board}, and a press XORs its mask into the one to five words
+ * it touches with compare-and-set. Presses commute, so whatever order their words are updated in, the board after the
+ * first n presses is well defined: that board is version n (plus the versions used by earlier boards). Each press
+ * takes the next version from a counter and the moves are counted on a striped {@link LongAdder}.
+ * {@link #snapshot()} copies the words optimistically and retries if a press was under way, so every snapshot, and
+ * every event, is a board that really existed.
+ * <p>
+ * Loading or generating a board seals the old words against new presses and swaps in new ones, so a load can't mix
+ * with a press: presses that began before the seal finish on the old board and keep older versions, later ones are
+ * made on the new board.
+ * <p>
+ * Observers are notified on the thread that made the change, possibly on several threads at once, so they must be
+ * thread safe themselves and can use {@link ModelEvent#getVersion()} to drop events older than what they have shown.
+ */
+public class ConcurrentLightsOutModel {
+    /**
+     * Added to a game's press count when it is replaced, so presses that come too late see it and move on.
+     */
+    private static final long SEALED = 1L << 62;
+
+    private final AtomicReference<Game> game;
+    private final List<Observer<ConcurrentLightsOutModel, ModelEvent>> observers = new CopyOnWriteArrayList<>();
+    private volatile SolverMode solverMode = SolverMode.AUTO;
+    private volatile String loadError;
+    /**
+     * The version of the last board announced as won, so two players finishing together announce it once.
+     */
+    private final AtomicLong wonVersion = new AtomicLong(-1);
+
+    /**
+     * Creates a new NxN board with every light off.
+     * @param n the side length, between {@link LightsOutModel#MIN_DIMENSION} and {@link LightsOutModel#MAX_DIMENSION}
+     */
+    public ConcurrentLightsOutModel(int n) {
+        if (n < LightsOutModel.MIN_DIMENSION || n > LightsOutModel.MAX_DIMENSION) {
+            throw new IllegalArgumentException("Board dimension must be between " + LightsOutModel.MIN_DIMENSION
+                    + " and " + LightsOutModel.MAX_DIMENSION + ": " + n);
+        }
+        game = new AtomicReference<>(new Game(new Board(n), 0));
+    }
+
+    /**
+     * One board and its presses. Replaced as a whole by a load.
+     */
+    private static final class Game {
+        final int size;
+        final int rowWords;
+        /**
+         * One word for boards up to {@link Board#PACKED_LIMIT}, otherwise rowWords words per row.
+         */
+        final AtomicLongArray words;
+        /**
+         * The version this board started at.
+         */
+        final long base;
+        /**
+         * Presses begun on this board. A press takes its number from here before touching the words. At least
+         * {@link #SEALED} once the board was replaced.
+         */
+        final AtomicLong pressed = new AtomicLong();
+        /**
+         * Presses finished on this board, the move count.
+         */
+        final LongAdder moves = new LongAdder();
+
+        Game(Board b, long base) {
+            size = b.getSize();
+            rowWords = size <= Board.PACKED_LIMIT ? 0 : (size + 63) >>> 6;
+            this.base = base;
+            if (rowWords == 0) {
+                words = new AtomicLongArray(new long[]{b.getBits()});
+            } else {
+                long[] all = new long[size * rowWords];
+                long[] row = new long[rowWords];
+                for (int y = 0; y < size; y++) {
+                    b.getRow(y, row);
+                    System.arraycopy(row, 0, all, y * rowWords, rowWords);
+                }
+                words = new AtomicLongArray(all);
+            }
+        }
+
+        void press(int x, int y) {
+            if (rowWords == 0) {
+                xor(0, Board.toggleMasks(size)[y * size + x]);
+                return;
+            }
+            int row = y * rowWords;
+            int word = x >>> 6;
+            long bit = 1L << x;
+            long middle = bit;
+            if (x > 0) {
+                if ((x & 63) == 0) {
+                    xor(row + word - 1, 1L << 63);
+                } else {
+                    middle |= bit >>> 1;
+                }
+            }
+            if (x < size - 1) {
+                if ((x & 63) == 63) {
+                    xor(row + word + 1, 1L);
+                } else {
+                    middle |= bit << 1;
+                }
+            }
+            xor(row + word, middle);
+            if (y > 0) {
+                xor(row - rowWords + word, bit);
+            }
+            if (y < size - 1) {
+                xor(row + rowWords + word, bit);
+            }
+        }
+
+        private void xor(int i, long mask) {
+            long w;
+            do {
+                w = words.get(i);
+            } while (!words.weakCompareAndSetVolatile(i, w, w ^ mask));
+        }
+    }
+
+    /**
+     * A copy of the board as it was after a given number of presses.
+     */
+    public static final class Snapshot {
+        private final Board board;
+        private final long version;
+        private final long moves;
+
+        private Snapshot(Board board, long version, long moves) {
+            this.board = board;
+            this.version = version;
+            this.moves = moves;
+        }
+
+        public int getSize() {
+            return board.getSize();
+        }
+
+        /**
+         * @return the version of the board, see {@link ModelEvent#getVersion()}
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the presses made on this board since it was loaded
+         */
+        public long getMoves() {
+            return moves;
+        }
+
+        public boolean isOn(int x, int y) {
+            return board.isOn(x, y);
+        }
+
+        /**
+         * @return true iff every light was off
+         */
+        public boolean isClear() {
+            return board.isClear();
+        }
+
+        /**
+         * Copies row y, in the layout of {@link LightsOutModel#getRow(int, long[])}.
+         */
+        public void getRow(int y, long[] dest) {
+            board.getRow(y, dest);
+        }
+    }
+
+    /**
+     * Copies the board. Retries while presses are under way, so under a constant stream of presses it may spin for a
+     * while; each retry costs a copy of the words.
+     * @return the board with every press up to its version applied and no other
+     */
+    public Snapshot snapshot() {
+        while (true) {
+            Game g = game.get();
+            long pressed = g.pressed.get();
+            // moves only counts finished presses, so equal counts mean none is under way
+            if (pressed < SEALED && g.moves.sum() == pressed) {
+                long[] copy = new long[g.words.length()];
+                for (int i = 0; i < copy.length; i++) {
+                    copy[i] = g.words.get(i);
+                }
+                if (g.pressed.get() == pressed) {
+                    return new Snapshot(toBoard(g, copy), g.base + pressed, pressed);
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static Board toBoard(Game g, long[] words) {
+        if (g.rowWords == 0) {
+            return Board.fromVector(g.size, words);
+        }
+        Board b = new Board(g.size);
+        long[] row = new long[g.rowWords];
+        for (int y = 0; y < g.size; y++) {
+            System.arraycopy(words, y * g.rowWords, row, 0, g.rowWords);
+            b.setRow(y, row);
+        }
+        return b;
+    }
+
+    /**
+     * @return the side length of the board
+     */
+    public int getDimension() {
+        return game.get().size;
+    }
+
+    /**
+     * @return the presses finished on the current board; presses still under way are not counted yet
+     */
+    public long getMoves() {
+        return game.get().moves.sum();
+    }
+
+    /**
+     * @return the version of the board after the last press begun
+     */
+    public long getVersion() {
+        while (true) {
+            Game g = game.get();
+            long pressed = g.pressed.get();
+            if (pressed < SEALED) {
+                return g.base + pressed;
+            }
+            Thread.onSpinWait(); // a load is swapping the board
+        }
+    }
+
+    /**
+     * Presses the tile at (x,y) and announces it, then announces a win if the board is off afterwards.
+     * @return the version of the board right after this press
+     */
+    public long toggleTile(int x, int y) {
+        Game g;
+        long n;
+        while (true) {
+            g = game.get();
+            if (x < 0 || x >= g.size || y < 0 || y >= g.size) {
+                throw new IndexOutOfBoundsException("(" + x + "," + y + ") is not on a " + g.size + "x" + g.size + " board");
+            }
+            n = g.pressed.get();
+            if (n >= SEALED) {
+                Thread.onSpinWait(); // the board was just replaced, press the new one
+            } else if (g.pressed.compareAndSet(n, n + 1)) {
+                n++;
+                break;
+            }
+        }
+        long version = g.base + n;
+        g.press(x, y);
+        g.moves.increment();
+        announce(ModelEvent.toggled(x, y, g.size, version));
+        if (quickClear(g)) {
+            Snapshot s = snapshot();
+            if (s.isClear()) {
+                announceWon(s.getVersion());
+            }
+        }
+        return version;
+    }
+
+    /**
+     * A racy look at the words; only a hint that the board may be off.
+     */
+    private static boolean quickClear(Game g) {
+        for (int i = 0; i < g.words.length(); i++) {
+            if (g.words.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void announceWon(long version) {
+        long last;
+        do {
+            last = wonVersion.get();
+            if (last >= version) {
+                return;
+            }
+        } while (!wonVersion.compareAndSet(last, version));
+        announce(ModelEvent.of(ModelEvent.Kind.WON, "You win", version));
+    }
+
+    /**
+     * Tests if the game has been won.
+     * @return true iff every tile of a consistent snapshot is off
+     */
+    public boolean gameOver() {
+        return quickClear(game.get()) && snapshot().isClear();
+    }
+
+    /**
+     * Solves a snapshot of the board with the current {@link SolverMode} and announces the hint, tagged with the
+     * snapshot's version. Other players may have pressed since.
+     * @return x and y of the press to make next, null if the board is unsolvable or already off
+     */
+    public int[] getHint() {
+        Snapshot s = snapshot();
+        Solution solution = HintCache.shared().solve(s.board, solverMode);
+        if (!solution.isSolvable()) {
+            announce(ModelEvent.of(ModelEvent.Kind.UNSOLVABLE, LightsOutModel.UNSOLVABLE, s.getVersion()));
+            return null;
+        }
+        int next = solution.nextPress();
+        if (next < 0) {
+            return null;
+        }
+        int x = next % s.getSize();
+        int y = next / s.getSize();
+        announce(ModelEvent.hint(x, y, s.getVersion()));
+        return new int[]{x, y};
+    }
+
+    public void setSolverMode(SolverMode mode) {
+        solverMode = Objects.requireNonNull(mode);
+    }
+
+    /**
+     * Replaces the board with a uniformly random one that can be turned off, and announces it.
+     */
+    public void generateSolvableBoard() {
+        replace(new BoardGenerator(getDimension(), ThreadLocalRandom.current().nextLong()).next());
+    }
+
+    /**
+     * Attempts to load a board from a .lob file. It will announce to the observers if it was loaded successfully or
+     * not.
+     * @return true iff loaded successfully
+     */
+    public boolean loadBoardFromFile(File file) {
+        try (LobReader in = new LobReader(FileChannel.open(file.toPath()))) {
+            Board loaded = in.next();
+            if (loaded == null) {
+                return loadFailed(file + " holds no board");
+            }
+            in.expectEnd();
+            int size = loaded.getSize();
+            if (size < LightsOutModel.MIN_DIMENSION || size > LightsOutModel.MAX_DIMENSION) {
+                return loadFailed(file + " holds a " + size + "x" + size + " board, the supported sizes are "
+                        + LightsOutModel.MIN_DIMENSION + " to " + LightsOutModel.MAX_DIMENSION);
+            }
+            replace(loaded);
+            return true;
+        } catch (IOException | InvalidPathException e) {
+            return loadFailed(file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return why the last failed load failed
+     */
+    public String getLoadError() {
+        return loadError;
+    }
+
+    private boolean loadFailed(String why) {
+        loadError = why;
+        announce(ModelEvent.of(ModelEvent.Kind.LOAD_FAILED, LightsOutModel.LOAD_FAILED, getVersion()));
+        return false;
+    }
+
+    private void replace(Board b) {
+        while (true) {
+            Game old = game.get();
+            long pressed = seal(old);
+            if (pressed >= 0) {
+                // only the thread that sealed the old board swaps it, the board after all its presses plus one
+                Game next = new Game(b, old.base + pressed + 1);
+                game.set(next);
+                announce(ModelEvent.of(ModelEvent.Kind.LOADED, LightsOutModel.LOADED, next.base));
+                return;
+            }
+            Thread.onSpinWait(); // another load is swapping the board
+        }
+    }
+
+    /**
+     * Seals a board against further presses, at most once.
+     * @return the presses begun on it before the seal, or -1 if another thread sealed it first
+     */
+    private static long seal(Game g) {
+        while (true) {
+            long pressed = g.pressed.get();
+            if (pressed >= SEALED) {
+                return -1;
+            }
+            if (g.pressed.compareAndSet(pressed, pressed + SEALED)) {
+                return pressed;
+            }
+        }
+    }
+
+    /**
+     * Adds an observer. Observers may be added and removed while events are being announced.
+     */
+    public void addObserver(Observer<ConcurrentLightsOutModel, ModelEvent> obs) {
+        observers.add(obs);
+    }
+
+    public void removeObserver(Observer<ConcurrentLightsOutModel, ModelEvent> obs) {
+        observers.remove(obs);
+    }
+
+    private void announce(ModelEvent event) {
+        for (Observer<ConcurrentLightsOutModel, ModelEvent> obs : observers) {
+            obs.update(this, event);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A file holding the optimal number of presses and one optimal next press for every solvable board of a small size.
+ * <p>
+ * Solvable boards are exactly those with an even number of lit tiles under every quiet pattern, so two tiles of each
+ * solvable board are implied by the others. Dropping them leaves a dense index of 2^(size^2 - nullity) entries;
+ * for 5x5 that is 2^23 entries of two bytes. The file is memory mapped, so a lookup is one read from the page cache
+ * and allocates nothing.
+ * <p>
+ * Generate the table once with {@code model.DistanceTable [file] [size]}. The game looks for it at the path given by the
+ * {@code lightsout.table} system property, or {@value #DEFAULT_FILE} in the working directory.
+ */
+class DistanceTable {
+    /**
+     * Where the game looks for the table when the system property is not set.
+     */
+    static final String DEFAULT_FILE = "lightsout-5x5.table";
+    /**
+     * Returned by {@link #nextMove(long)} for boards that cannot be turned off.
+     */
+    static final int UNSOLVABLE = -2;
+
+    private static final int MAGIC = 0x4C4F5444; // LOTD
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int NO_MOVE = 0x3F;
+    private static final int MOVE_BITS = 6;
+    private static final int MAX_INDEX_BITS = 28;
+
+    private static volatile DistanceTable shared;
+    /**
+     * The path and modification time of the table file when it last failed to open, so it is only tried again once
+     * the file was created or changed.
+     */
+    private static volatile String sharedMissing;
+
+    private final int size;
+    private final Index index;
+    private final MappedByteBuffer entries;
+
+    private DistanceTable(int size, MappedByteBuffer entries) {
+        this.size = size;
+        this.index = new Index(size);
+        this.entries = entries;
+    }
+
+    /**
+     * Maps the table the game is configured to use the first time it is asked for. While there is no usable table,
+     * each call looks at the file's modification time, so a table generated later is picked up.
+     * @param size side length of the board that needs a hint
+     * @return the table, or null if it does not exist or covers another size
+     */
+    static DistanceTable shared(int size) {
+        DistanceTable t = shared;
+        if (t == null) {
+            Path file = Paths.get(System.getProperty("lightsout.table", DEFAULT_FILE));
+            String stamp = stamp(file);
+            if (!stamp.equals(sharedMissing)) {
+                synchronized (DistanceTable.class) {
+                    t = shared;
+                    if (t == null && !stamp.equals(sharedMissing)) {
+                        try {
+                            t = shared = open(file);
+                        } catch (IOException | IllegalArgumentException e) {
+                            sharedMissing = stamp;
+                        }
+                    }
+                }
+            }
+        }
+        return t != null && t.size == size ? t : null;
+    }
+
+    private static String stamp(Path file) {
+        try {
+            return file.toAbsolutePath() + " " + Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return file.toAbsolutePath() + " absent";
+        }
+    }
+
+    /**
+     * Maps an existing table.
+     * @param file the table file
+     * @return the table
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file is not a table
+     */
+    static DistanceTable open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (ch.size() < HEADER_BYTES || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                throw new IllegalArgumentException(file + " is not a distance table");
+            }
+            int size = buf.getInt(8);
+            long count = buf.getInt(12) & 0xFFFFFFFFL;
+            if (size < 1 || size > Board.PACKED_LIMIT || new Index(size).entries() != count
+                    || ch.size() != HEADER_BYTES + 2 * count) {
+                throw new IllegalArgumentException(file + " is corrupt");
+            }
+            return new DistanceTable(size, buf);
+        }
+    }
+
+    /**
+     * Computes the table for every solvable board of a size, in parallel, and writes it to a file.
+     * @param file where to write the table
+     * @param size side length of the boards
+     * @throws IOException if the file can't be written
+     */
+    static void generate(Path file, int size) throws IOException {
+        Index index = new Index(size);
+        int count = index.entries();
+        LinearSolver solver = LinearSolver.forSize(size);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + 2L * count);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            IntStream.range(0, count).parallel().forEach(i -> {
+                Board b = Board.fromVector(size, new long[]{index.decode(i)});
+                Solution s = solver.solve(b); //shortest, since every quiet pattern combination is tried
+                int move = s.length() == 0 ? NO_MOVE : s.nextPress();
+                buf.putShort(HEADER_BYTES + 2 * i, (short) (s.length() << MOVE_BITS | move));
+            });
+            buf.putInt(0, MAGIC);
+            buf.putInt(4, VERSION);
+            buf.putInt(8, size);
+            buf.putInt(12, count);
+            buf.force();
+        }
+    }
+
+    /**
+     * @return the minimum number of presses that turn the board off, -1 if it can't be turned off
+     */
+    int distance(long bits) {
+        int i = index.encode(bits);
+        return i < 0 ? -1 : (entries.getShort(HEADER_BYTES + 2 * i) & 0xFFFF) >>> MOVE_BITS;
+    }
+
+    /**
+     * @return y*size+x of a press on a shortest solution, -1 if the board is already off, {@link #UNSOLVABLE} if it
+     * can't be turned off
+     */
+    int nextMove(long bits) {
+        int i = index.encode(bits);
+        if (i < 0) {
+            return UNSOLVABLE;
+        }
+        int move = entries.getShort(HEADER_BYTES + 2 * i) & NO_MOVE;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * Follows the table from a board down to a dark board.
+     * @return a shortest solution, or {@link Solution#UNSOLVABLE}
+     */
+    Solution solve(Board board) {
+        long bits = board.getBits();
+        if (index.encode(bits) < 0) {
+            return Solution.UNSOLVABLE;
+        }
+        Board presses = new Board(size);
+        Board walk = new Board(board);
+        for (int move = nextMove(bits); move >= 0; move = nextMove(walk.getBits())) {
+            walk.toggleTile(move % size, move / size);
+            presses.flip(move % size, move / size);
+        }
+        return new Solution(presses);
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * The bijection between solvable boards and table positions.
+     */
+    static class Index {
+        private final long[] quiet;
+        /**
+         * implied[k] is implied by the rest of the board through quiet[k]; no other quiet pattern contains it.
+         */
+        private final int[] implied;
+        /**
+         * The implied tiles in increasing order.
+         */
+        private final int[] dropped;
+        private final int cells;
+
+        Index(int size) {
+            cells = size * size;
+            long[][] basis = LinearSolver.forSize(size).quietPatterns();
+            quiet = new long[basis.length];
+            for (int k = 0; k < quiet.length; k++) {
+                quiet[k] = basis[k][0];
+            }
+            implied = new int[quiet.length];
+            for (int k = 0; k < quiet.length; k++) {
+                implied[k] = Long.numberOfTrailingZeros(quiet[k]);
+                for (int j = 0; j < quiet.length; j++) {
+                    if (j != k && (quiet[j] >>> implied[k] & 1L) != 0) {
+                        quiet[j] ^= quiet[k];
+                    }
+                }
+            }
+            dropped = implied.clone();
+            Arrays.sort(dropped);
+            if (cells - dropped.length > MAX_INDEX_BITS) {
+                throw new IllegalArgumentException("A " + size + "x" + size + " table would be too large");
+            }
+        }
+
+        int entries() {
+            return 1 << (cells - dropped.length);
+        }
+
+        /**
+         * @return the table position of a board, -1 if it is not solvable
+         */
+        int encode(long bits) {
+            for (long q : quiet) {
+                if ((Long.bitCount(bits & q) & 1) != 0) {
+                    return -1;
+                }
+            }
+            long ret = bits;
+            for (int k = dropped.length - 1; k >= 0; k--) {
+                int d = dropped[k];
+                ret = (ret & ((1L << d) - 1)) | (ret >>> (d + 1) << d);
+            }
+            return (int) ret;
+        }
+
+        /**
+         * @return the solvable board at a table position
+         */
+        long decode(int i) {
+            long bits = i;
+            for (int d : dropped) {
+                bits = (bits & ((1L << d) - 1)) | (bits >>> d << (d + 1));
+            }
+            for (int k = 0; k < quiet.length; k++) {
+                if ((Long.bitCount(bits & quiet[k]) & 1) != 0) {
+                    bits |= 1L << implied[k];
+                }
+            }
+            return bits;
+        }
+    }
+
+    /**
+     * Generates a table.
+     * @param args the file to write (default {@value #DEFAULT_FILE}) and the board size (default 5)
+     * @throws IOException if the file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : DEFAULT_FILE);
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : Board.DEFAULT_SIZE;
+        long start = System.currentTimeMillis();
+        generate(file, size);
+        System.out.printf("Wrote %d entries for %dx%d boards to %s (%d bytes) in %.1fs%n",
+                new Index(size).entries(), size, size, file, Files.size(file),
+                (System.currentTimeMillis() - start) / 1000.0);
+    }
+}
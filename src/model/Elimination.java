@@ -0,0 +1,147 @@
+package model;
+
+/**
+ * Gauss-Jordan elimination of a square matrix over GF(2), kept so that any right hand side can be solved later
+ * with one parity check per row. Rows and vectors are bit vectors packed into longs.
+ */
+class Elimination {
+    private final int dim;
+    private final int rank;
+    /**
+     * Row r is the combination of original equations that produced reduced row r.
+     */
+    private final long[][] transform;
+    /**
+     * The variable solved by reduced row r, for r < rank.
+     */
+    private final int[] pivots;
+    /**
+     * A basis of the null space of the matrix.
+     */
+    private final long[][] nullBasis;
+
+    /**
+     * Eliminates a matrix.
+     * @param matrix dim rows of dim bits each; it is destroyed in the process
+     */
+    Elimination(long[][] matrix) {
+        dim = matrix.length;
+        int words = (dim + 63) >>> 6;
+        transform = new long[dim][words];
+        for (int i = 0; i < dim; i++) {
+            transform[i][i >>> 6] = 1L << i;
+        }
+
+        pivots = new int[dim];
+        boolean[] pivotCol = new boolean[dim];
+        int r = 0;
+        for (int col = 0; col < dim && r < dim; col++) {
+            int w = col >>> 6;
+            long bit = 1L << col;
+            int p = r;
+            while (p < dim && (matrix[p][w] & bit) == 0) {
+                p++;
+            }
+            if (p == dim) {
+                continue;
+            }
+            swap(matrix, r, p);
+            swap(transform, r, p);
+            for (int i = 0; i < dim; i++) {
+                if (i != r && (matrix[i][w] & bit) != 0) {
+                    xor(matrix[i], matrix[r]);
+                    xor(transform[i], transform[r]);
+                }
+            }
+            pivots[r] = col;
+            pivotCol[col] = true;
+            r++;
+        }
+        rank = r;
+
+        nullBasis = new long[dim - rank][];
+        int q = 0;
+        for (int free = 0; free < dim; free++) {
+            if (pivotCol[free]) {
+                continue;
+            }
+            long[] v = new long[words];
+            v[free >>> 6] |= 1L << free;
+            for (int row = 0; row < rank; row++) {
+                if ((matrix[row][free >>> 6] >>> free & 1L) != 0) {
+                    v[pivots[row] >>> 6] |= 1L << pivots[row];
+                }
+            }
+            nullBasis[q++] = v;
+        }
+    }
+
+    /**
+     * Solves M*x = b with every free variable set to 0.
+     * @param b the right hand side
+     * @return x, or null if the system is inconsistent
+     */
+    long[] solve(long[] b) {
+        long[] x = new long[b.length];
+        for (int r = 0; r < dim; r++) {
+            if (parity(transform[r], b)) {
+                if (r >= rank) {
+                    return null; // 0 = 1
+                }
+                x[pivots[r] >>> 6] |= 1L << pivots[r];
+            }
+        }
+        return x;
+    }
+
+    /**
+     * @return true iff M*x = b has a solution
+     */
+    boolean isSolvable(long[] b) {
+        for (int r = rank; r < dim; r++) {
+            if (parity(transform[r], b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int rank() {
+        return rank;
+    }
+
+    /**
+     * @return the null space basis; callers must not modify it
+     */
+    long[][] nullBasis() {
+        return nullBasis;
+    }
+
+    static boolean parity(long[] a, long[] b) {
+        long acc = 0;
+        for (int i = 0; i < a.length; i++) {
+            acc ^= a[i] & b[i];
+        }
+        return (Long.bitCount(acc) & 1) != 0;
+    }
+
+    static int count(long[] v) {
+        int c = 0;
+        for (long w : v) {
+            c += Long.bitCount(w);
+        }
+        return c;
+    }
+
+    static void xor(long[] into, long[] from) {
+        for (int i = 0; i < into.length; i++) {
+            into[i] ^= from[i];
+        }
+    }
+
+    private static void swap(long[][] m, int a, int b) {
+        long[] t = m[a];
+        m[a] = m[b];
+        m[b] = t;
+    }
+}
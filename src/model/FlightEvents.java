@@ -0,0 +1,105 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for what the game and its solvers do, so a recording shows which toggles, hints,
+ * loads and solver phases lined up with GC or CPU spikes. They cost next to nothing unless a recording with them
+ * enabled is running, e.g. java -XX:StartFlightRecording:filename=game.jfr. All are under the "Lights Out" category
+ * in JDK Mission Control.
+ */
+final class FlightEvents {
+    private FlightEvents() {
+    }
+
+    @Name("lightsout.Toggle")
+    @Label("Toggle")
+    @Category("Lights Out")
+    @Description("A tile pressed in a game")
+    static final class Toggle extends Event {
+        @Label("Board Size")
+        int size;
+        @Label("X")
+        int x;
+        @Label("Y")
+        int y;
+    }
+
+    @Name("lightsout.Hint")
+    @Label("Hint")
+    @Category("Lights Out")
+    @Description("A hint computed for a game, synchronously or in the background")
+    static final class Hint extends Event {
+        @Label("Board Size")
+        int size;
+        @Label("Solver Mode")
+        String mode;
+        @Label("Next Press")
+        @Description("y*size+x of the hinted tile, -1 if the board is off, -2 if it is unsolvable")
+        int next;
+    }
+
+    @Name("lightsout.Load")
+    @Label("Load")
+    @Category("Lights Out")
+    @Description("A board loaded from a .lob file or a corpus")
+    static final class Load extends Event {
+        @Label("Source")
+        String source;
+        @Label("Board Size")
+        @Description("0 if the load failed")
+        int size;
+        @Label("Error")
+        String error;
+    }
+
+    @Name("lightsout.Solve")
+    @Label("Solve")
+    @Category("Lights Out")
+    @Description("One call to a solver")
+    static final class Solve extends Event {
+        @Label("Board Size")
+        int size;
+        @Label("Solver Mode")
+        String mode;
+        @Label("Presses")
+        @Description("Length of the solution found, -1 if unsolvable")
+        int presses;
+    }
+
+    @Name("lightsout.SolverPhase")
+    @Label("Solver Phase")
+    @Category("Lights Out")
+    @Description("Building a per-size solver table, or running one search")
+    static final class Phase extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Board Size")
+        int size;
+        @Label("Nodes Expanded")
+        long expanded;
+        @Label("Peak Open List")
+        long peakOpen;
+    }
+
+    /**
+     * Commits a phase event if it is enabled, for the phases with no node counts.
+     */
+    static void phase(Phase event, String phase, int size) {
+        phase(event, phase, size, 0, 0);
+    }
+
+    static void phase(Phase event, String phase, int size, long expanded, long peakOpen) {
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.size = size;
+            event.expanded = expanded;
+            event.peakOpen = peakOpen;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hosts many games at once without a UI. Each connection is a session with its own {@link LightsOutModel}, played
+ * with one request per line and one reply line per request:
+ * <pre>
+ * NEW [SIZE]      a random solvable board           OK SIZE
+ * LOAD NAME       a .lob file of the boards folder   OK SIZE
+ * LOAD #K         board K of the server's corpus     OK SIZE
+ * TOGGLE X Y      press a tile                       OK MOVES, or WON MOVES if that turned the board off
+ * HINT            the next press                     HINT X Y, OFF or UNSOLVABLE
+ * BOARD           the lights, rows top to bottom     BOARD SIZE 01101/10000/...
+ * QUIT                                               BYE, then the server closes the connection
+ * </pre>
+ * Failures reply ERR and a reason. One selector thread does all the socket I/O, so idle sessions cost a buffer and no
+ * thread; requests run on a small pool of workers, one at a time per session and in the order they arrived, so a
+ * session's model is only ever used by one thread at a time. Every session shares the {@link HintCache} and the
+ * corpus. Boards are limited to a maximum size, 100x100 by default, so many sessions can't exhaust the heap.
+ * <p>
+ * A session stops being read while replies are waiting to be written or {@link #MAX_QUEUED} requests are waiting to
+ * run, so a client that sends requests without reading the replies is slowed down to the pace it reads at.
+ * <pre>
+ * model.GameServer [-port P] [-threads N] [-boards DIR] [-corpus FILE.lobc] [-max-size N]
+ * </pre>
+ * The server only listens on the loopback interface. {@link LoadGenerator} drives it with simulated players.
+ */
+class GameServer implements Closeable {
+    static final int DEFAULT_PORT = 7717;
+    /**
+     * Longest request line; longer ones close the session.
+     */
+    private static final int MAX_LINE = 256;
+    /**
+     * Requests a worker runs for one session before letting other sessions have the worker.
+     */
+    private static final int REQUESTS_PER_TURN = 16;
+    /**
+     * Requests waiting to run past which a session is not read any further.
+     */
+    static final int MAX_QUEUED = 64;
+    static final int DEFAULT_MAX_SIZE = 100;
+
+    private final ServerSocketChannel listener;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final int threads;
+    private final Path boards;
+    private final BoardCorpus corpus;
+    private final int maxSize;
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final LongAdder sessionsOpened = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Opens the listening socket; {@link #serve()} starts taking connections.
+     * @param port the loopback port, 0 for any free one
+     * @param threads how many workers run requests
+     * @param boards the folder LOAD reads .lob files from
+     * @param corpus the corpus LOAD #K reads from, or null
+     * @param maxSize the largest side length a session may play
+     */
+    GameServer(int port, int threads, Path boards, Path corpus, int maxSize) throws IOException {
+        this.threads = threads;
+        this.boards = boards.toAbsolutePath().normalize();
+        this.corpus = corpus == null ? null : BoardCorpus.open(corpus);
+        this.maxSize = maxSize;
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+        AtomicInteger id = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "session-worker-" + id.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    int getPort() {
+        return listener.socket().getLocalPort();
+    }
+
+    /**
+     * Runs the selector loop on the calling thread until {@link #close()}.
+     */
+    void serve() throws IOException {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Session s = (Session) key.attachment();
+                        if (key.isWritable()) {
+                            s.flush();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            s.read();
+                        }
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // closed by close()
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = listener.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Session s = new Session(channel);
+            s.key = channel.register(selector, SelectionKey.OP_READ, s);
+            sessions.incrementAndGet();
+            sessionsOpened.increment();
+        }
+    }
+
+    /**
+     * Stops listening and drops every session.
+     */
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+        listener.close();
+    }
+
+    void printStats(PrintStream ps) {
+        ps.printf("Sessions: %d open, %d since start; requests: %d on %d workers%n",
+                sessions.get(), sessionsOpened.sum(), latency.count(), threads);
+        ps.printf("Request latency us: mean %.1f, p50 %d, p90 %d, p99 %d, max %d%n",
+                latency.mean() / 1000, latency.percentile(50) / 1000, latency.percentile(90) / 1000,
+                latency.percentile(99) / 1000, latency.max() / 1000);
+    }
+
+    /**
+     * One connection and its game. Reads happen on the selector thread, requests on the workers.
+     */
+    private final class Session {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        private final Queue<String> requests = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        /**
+         * Reply bytes the socket did not take yet, in write mode. Guarded by the session.
+         */
+        private ByteBuffer out = ByteBuffer.allocate(0);
+        /**
+         * The interest ops last set. Guarded by the session.
+         */
+        private int ops = SelectionKey.OP_READ;
+        private LightsOutModel model = new LightsOutModel();
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Splits what arrived into request lines and queues them.
+         */
+        void read() {
+            int n;
+            try {
+                n = channel.read(in);
+            } catch (IOException e) {
+                n = -1;
+            }
+            if (n < 0) {
+                close();
+                return;
+            }
+            int start = 0;
+            for (int i = 0; i < in.position(); i++) {
+                if (in.get(i) == '\n') {
+                    int end = i > start && in.get(i - 1) == '\r' ? i - 1 : i;
+                    requests.add(new String(in.array(), start, end - start, StandardCharsets.US_ASCII));
+                    queued.incrementAndGet();
+                    start = i + 1;
+                }
+            }
+            if (start == 0 && !in.hasRemaining()) {
+                send("ERR line longer than " + MAX_LINE + " bytes");
+                close();
+                return;
+            }
+            in.limit(in.position()).position(start);
+            in.compact();
+            updateInterest();
+            schedule();
+        }
+
+        private void schedule() {
+            if (!requests.isEmpty() && scheduled.compareAndSet(false, true)) {
+                workers.execute(this::run);
+            }
+        }
+
+        /**
+         * Answers the queued requests on a worker.
+         */
+        private void run() {
+            try {
+                String line;
+                for (int k = 0; k < REQUESTS_PER_TURN && !closed.get() && (line = requests.poll()) != null; k++) {
+                    queued.decrementAndGet();
+                    long start = System.nanoTime();
+                    String reply;
+                    try {
+                        reply = handle(line);
+                    } catch (RuntimeException e) {
+                        reply = "ERR " + e.getMessage();
+                    }
+                    latency.record(System.nanoTime() - start);
+                    send(reply);
+                    if (reply.equals("BYE")) {
+                        close();
+                    }
+                }
+            } catch (Error e) {
+                close(); // the game may be half changed; the other sessions go on
+                throw e;
+            } finally {
+                scheduled.set(false);
+            }
+            updateInterest(); // read again if the queue drained
+            schedule(); // requests that came in after the last poll, or past this turn
+        }
+
+        String handle(String line) {
+            String[] words = line.trim().split("\\s+");
+            switch (words[0].toUpperCase()) {
+                case "NEW":
+                    int size = words.length > 1 ? Integer.parseInt(words[1]) : model.getDimension();
+                    if (size > maxSize) {
+                        return "ERR boards are at most " + maxSize + "x" + maxSize;
+                    }
+                    if (size != model.getDimension()) {
+                        model = new LightsOutModel(size);
+                    }
+                    model.generateSolvableBoard();
+                    return "OK " + size;
+                case "LOAD":
+                    return load(words.length > 1 ? words[1] : "");
+                case "TOGGLE":
+                    if (words.length != 3) {
+                        return "ERR expected TOGGLE X Y";
+                    }
+                    model.toggleTile(Integer.parseInt(words[1]), Integer.parseInt(words[2]));
+                    return (model.gameOver() ? "WON " : "OK ") + model.getMoves();
+                case "HINT":
+                    Tile hint = model.getHint();
+                    if (hint != null) {
+                        return "HINT " + hint.getX() + " " + hint.getY();
+                    }
+                    return model.gameOver() ? "OFF" : "UNSOLVABLE";
+                case "BOARD":
+                    return describeBoard();
+                case "QUIT":
+                    return "BYE";
+                default:
+                    return "ERR unknown request " + words[0];
+            }
+        }
+
+        private String load(String name) {
+            Board loaded;
+            try {
+                if (name.startsWith("#")) {
+                    if (corpus == null) {
+                        return "ERR the server has no corpus";
+                    }
+                    int k = Integer.parseInt(name.substring(1));
+                    if (k < 0 || k >= corpus.count()) {
+                        return "ERR the corpus holds " + corpus.count() + " boards";
+                    }
+                    if (corpus.sizeOf(k) > maxSize) {
+                        return "ERR boards are at most " + maxSize + "x" + maxSize;
+                    }
+                    loaded = corpus.get(k);
+                } else {
+                    Path file = boards.resolve(name).normalize();
+                    if (name.isEmpty() || !file.startsWith(boards)) {
+                        return "ERR no board " + name;
+                    }
+                    try (LobReader in = new LobReader(FileChannel.open(file))) {
+                        loaded = in.next();
+                        if (loaded != null) {
+                            in.expectEnd();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                return "ERR " + e.getMessage();
+            }
+            if (loaded == null || loaded.getSize() < LightsOutModel.MIN_DIMENSION || loaded.getSize() > maxSize) {
+                return "ERR no board of a size from " + LightsOutModel.MIN_DIMENSION + " to " + maxSize + " in " + name;
+            }
+            model.loadBoard(loaded, name);
+            return "OK " + model.getDimension();
+        }
+
+        private String describeBoard() {
+            int size = model.getDimension();
+            StringBuilder sb = new StringBuilder(size * (size + 1) + 16).append("BOARD ").append(size).append(' ');
+            long[] row = new long[(size + 63) >>> 6];
+            for (int y = 0; y < size; y++) {
+                model.getRow(y, row);
+                if (y > 0) {
+                    sb.append('/');
+                }
+                for (int x = 0; x < size; x++) {
+                    sb.append((row[x >>> 6] >>> x & 1L) != 0 ? '1' : '0');
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Writes a reply line, leaving what the socket can't take for the selector thread.
+         */
+        private void send(String reply) {
+            byte[] bytes = (reply + "\n").getBytes(StandardCharsets.US_ASCII);
+            synchronized (this) {
+                if (out.position() + bytes.length > out.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.position() + bytes.length, 2 * out.capacity()));
+                    out.flip();
+                    out = bigger.put(out);
+                }
+                out.put(bytes);
+                writeOut();
+                updateInterest();
+            }
+        }
+
+        synchronized void flush() {
+            writeOut();
+            updateInterest();
+        }
+
+        /**
+         * Reads only while no reply is waiting and the queue is short, and writes only while a reply is waiting.
+         */
+        private synchronized void updateInterest() {
+            int wanted = out.position() > 0 ? SelectionKey.OP_WRITE
+                    : queued.get() < MAX_QUEUED ? SelectionKey.OP_READ : 0;
+            if (wanted == ops || closed.get()) {
+                return;
+            }
+            ops = wanted;
+            try {
+                key.interestOps(wanted);
+            } catch (CancelledKeyException e) {
+                return; // closed meanwhile
+            }
+            selector.wakeup(); // a worker's change must reach a select already waiting
+        }
+
+        /**
+         * @return true iff every pending byte was written
+         */
+        private boolean writeOut() {
+            out.flip();
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                out.clear();
+                close();
+                return true;
+            } finally {
+                out.compact();
+            }
+            return out.position() == 0;
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                sessions.decrementAndGet();
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // already gone
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a server until it is killed, printing its statistics every minute.
+     * @param args options, see the class comment
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path boards = Paths.get("boards");
+        Path corpus = null;
+        int maxSize = DEFAULT_MAX_SIZE;
+        for (int a = 0; a < args.length; a++) {
+            switch (args[a]) {
+                case "-port":
+                    port = Integer.parseInt(args[++a]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++a]);
+                    break;
+                case "-boards":
+                    boards = Paths.get(args[++a]);
+                    break;
+                case "-corpus":
+                    corpus = Paths.get(args[++a]);
+                    break;
+                case "-max-size":
+                    maxSize = Integer.parseInt(args[++a]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[a]);
+                    System.err.println("Usage: model.GameServer [-port P] [-threads N] [-boards DIR] [-corpus FILE"
+                            + BoardCorpus.EXTENSION + "] [-max-size N]");
+                    System.exit(2);
+            }
+        }
+        GameServer server = new GameServer(port, threads, boards, corpus, maxSize);
+        System.err.println("Serving games on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort());
+        Thread stats = new Thread(() -> {
+            try {
+                while (true) {
+                    TimeUnit.MINUTES.sleep(1);
+                    server.printStats(System.err);
+                }
+            } catch (InterruptedException e) {
+                // shutting down
+            }
+        }, "server-stats");
+        stats.setDaemon(true);
+        stats.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.printStats(System.err)));
+        server.serve();
+    }
+}
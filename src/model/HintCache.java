@@ -0,0 +1,298 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Solutions shared by every model in the process, so a board that many games reach (the puzzles in boards/, common
+ * scrambles) is solved once per solver mode. Lights Out plays the same under the 8 rotations and reflections of the
+ * square, so a board is stored in its canonical orientation, the smallest of its 8 images, and a rotated or mirrored
+ * board finds the same entry; its presses are turned back to the board's own orientation on the way out.
+ * <p>
+ * The cache is split into stripes by key hash, each an LRU list behind its own lock, so threads rarely wait on each
+ * other. A full stripe only admits a new board if it was asked for more often than the least recently used one
+ * (TinyLFU): a small counting sketch per stripe estimates how often each board was asked for, and is halved now and
+ * then so old popularity fades. One-off boards then can't flush the popular ones.
+ * <p>
+ * Only boards up to {@link #MAX_SIZE} are cached; larger ones rarely repeat and their solutions are large. The number
+ * of entries is set with the system property lightsout.hintCache, 0 turns caching off.
+ */
+final class HintCache {
+    /**
+     * The largest side length that is cached.
+     */
+    static final int MAX_SIZE = 32;
+    static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int STRIPES = 16;
+
+    private static final HintCache SHARED = new HintCache(Integer.getInteger("lightsout.hintCache", DEFAULT_CAPACITY));
+
+    /**
+     * INVERSE[s] undoes symmetry s, see {@link #map(int, int, int, int)}.
+     */
+    private static final int[] INVERSE = {0, 3, 2, 1, 4, 5, 6, 7};
+
+    private final Stripe[] stripes;
+
+    /**
+     * @param capacity the most boards to keep, 0 for none
+     */
+    HintCache(int capacity) {
+        stripes = new Stripe[capacity <= 0 ? 0 : STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(Math.max(1, capacity / STRIPES));
+        }
+    }
+
+    /**
+     * @return the cache of this process
+     */
+    static HintCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Solves a board with the given strategy, from the cache if this board or one of its images was solved with it
+     * before.
+     * @param b the board to turn off; it is not modified
+     * @return the presses that turn b off, or {@link Solution#UNSOLVABLE}; the presses belong to the caller
+     * @throws java.util.concurrent.CancellationException if the thread was interrupted during a search, nothing is
+     * cached then
+     */
+    Solution solve(Board b, SolverMode mode) {
+        int size = b.getSize();
+        if (stripes.length == 0 || size > MAX_SIZE) {
+            return owned(Solver.solve(b, mode));
+        }
+        long[] lights = b.toVector();
+        int symmetry = canonicalSymmetry(lights, size);
+        Key key = new Key(mode, size, transform(lights, size, symmetry));
+        Stripe stripe = stripes[(key.hash ^ key.hash >>> 16) & (STRIPES - 1)];
+
+        long[] presses = stripe.get(key);
+        SolverMetrics.recordHintCacheLookup(presses != null);
+        if (presses != null) {
+            return presses == Stripe.UNSOLVABLE ? Solution.UNSOLVABLE
+                    : new Solution(Board.fromVector(size, transform(presses, size, INVERSE[symmetry])));
+        }
+        Solution solution = Solver.solve(b, mode);
+        stripe.put(key, solution.isSolvable()
+                ? transform(solution.getPresses().toVector(), size, symmetry) : Stripe.UNSOLVABLE);
+        return owned(solution);
+    }
+
+    private static Solution owned(Solution s) {
+        return s.isSolvable() ? new Solution(new Board(s.getPresses())) : s;
+    }
+
+    /**
+     * @return the number of boards cached
+     */
+    int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            n += s.size();
+        }
+        return n;
+    }
+
+    /**
+     * Forgets every board.
+     */
+    void clear() {
+        for (Stripe s : stripes) {
+            s.clear();
+        }
+    }
+
+    /**
+     * @return the symmetry whose image of the lights is the smallest, comparing words as unsigned numbers
+     */
+    static int canonicalSymmetry(long[] lights, int size) {
+        int best = 0;
+        long[] bestImage = lights;
+        for (int s = 1; s < 8; s++) {
+            long[] image = transform(lights, size, s);
+            if (Arrays.compareUnsigned(image, bestImage) < 0) {
+                best = s;
+                bestImage = image;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Applies one of the 8 symmetries of the square to a vector of tiles, bit y*size+x. Only the set bits are moved.
+     */
+    static long[] transform(long[] v, int size, int symmetry) {
+        if (symmetry == 0) {
+            return v.clone();
+        }
+        long[] out = new long[v.length];
+        for (int w = 0; w < v.length; w++) {
+            for (long bits = v[w]; bits != 0; bits &= bits - 1) {
+                int cell = w * 64 + Long.numberOfTrailingZeros(bits);
+                int to = map(symmetry, cell % size, cell / size, size);
+                out[to >>> 6] |= 1L << to;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return where symmetry s moves tile (x,y): 0 is the identity, 1 to 3 turn by 90, 180 and 270 degrees, 4 and 5
+     * mirror left to right and top to bottom, 6 and 7 mirror across the diagonals
+     */
+    private static int map(int s, int x, int y, int size) {
+        int last = size - 1;
+        switch (s) {
+            case 1:
+                return x * size + (last - y);
+            case 2:
+                return (last - y) * size + (last - x);
+            case 3:
+                return (last - x) * size + y;
+            case 4:
+                return y * size + (last - x);
+            case 5:
+                return (last - y) * size + x;
+            case 6:
+                return x * size + y;
+            case 7:
+                return (last - x) * size + (last - y);
+            default:
+                return y * size + x;
+        }
+    }
+
+    private static final class Key {
+        final SolverMode mode;
+        final int size;
+        final long[] lights;
+        final int hash;
+
+        Key(SolverMode mode, int size, long[] lights) {
+            this.mode = mode;
+            this.size = size;
+            this.lights = lights;
+            this.hash = (Arrays.hashCode(lights) * 31 + size) * 31 + mode.ordinal();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return hash == k.hash && mode == k.mode && size == k.size && Arrays.equals(lights, k.lights);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * An LRU map of canonical boards to canonical presses with a TinyLFU admission test. All access holds its lock.
+     */
+    private static final class Stripe {
+        /**
+         * Stored for boards that can't be turned off.
+         */
+        static final long[] UNSOLVABLE = new long[0];
+
+        private final int capacity;
+        private final LinkedHashMap<Key, long[]> entries;
+        private final FrequencySketch frequency;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(Math.min(capacity, 1 << 10), 0.75f, true);
+            this.frequency = new FrequencySketch(capacity);
+        }
+
+        synchronized long[] get(Key key) {
+            frequency.increment(key.hash);
+            return entries.get(key);
+        }
+
+        synchronized void put(Key key, long[] presses) {
+            if (entries.size() >= capacity && !entries.containsKey(key)) {
+                Iterator<Map.Entry<Key, long[]>> eldest = entries.entrySet().iterator();
+                Key victim = eldest.next().getKey();
+                if (frequency.estimate(key.hash) <= frequency.estimate(victim.hash)) {
+                    SolverMetrics.recordHintCacheRejection();
+                    return;
+                }
+                eldest.remove();
+                SolverMetrics.recordHintCacheEviction();
+            }
+            entries.put(key, presses);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            frequency.clear();
+        }
+    }
+
+    /**
+     * A count-min sketch of 4 bit counters: four counters per key, the estimate is the smallest. After 10 increments
+     * per entry of the stripe every counter is halved.
+     */
+    private static final class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] counters;
+        private final int mask;
+        private final int resetAfter;
+        private int increments;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity * 4 - 1)) << 1;
+            counters = new byte[width];
+            mask = width - 1;
+            resetAfter = 10 * capacity;
+        }
+
+        void increment(int hash) {
+            for (int i = 0; i < 4; i++) {
+                int slot = slot(hash, i);
+                if (counters[slot] < MAX_COUNT) {
+                    counters[slot]++;
+                }
+            }
+            if (++increments >= resetAfter) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                increments /= 2;
+            }
+        }
+
+        int estimate(int hash) {
+            int min = MAX_COUNT;
+            for (int i = 0; i < 4; i++) {
+                min = Math.min(min, counters[slot(hash, i)]);
+            }
+            return min;
+        }
+
+        void clear() {
+            Arrays.fill(counters, (byte) 0);
+            increments = 0;
+        }
+
+        private int slot(int hash, int i) {
+            int h = (hash + i) * 0x9E3779B9; // a different multiplicative hash per row
+            return (h ^ h >>> 15) & mask;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package model;
+
+/**
+ * Iterative deepening A* for shortest solutions on boards of at most {@link Board#PACKED_LIMIT} tiles per side,
+ * guided by the admissible {@link PatternDatabase} estimate. Memory use is constant: the only state is the
+ * recursion, which is at most one frame per tile deep.
+ * <p>
+ * Presses commute and pressing a tile twice undoes it, so a plan is a set of tiles. Each set is visited once by only
+ * pressing tiles in increasing order. That order also means that once tiles of row y+2 are being pressed, nothing can
+ * change row y any more, so a branch is cut as soon as such a row is left lit.
+ */
+class IdaStar {
+    private static final int FOUND = -1;
+    private static final int NOT_FOUND = Integer.MAX_VALUE;
+
+    private final int size;
+    private final int cells;
+    private final long[] masks;
+    private final PatternDatabase pdb;
+
+    private long expanded;
+    private long nodeLimit;
+    private long solution;
+
+    IdaStar(int size) {
+        this.size = size;
+        cells = size * size;
+        masks = Board.toggleMasks(size);
+        pdb = PatternDatabase.forSize(size);
+    }
+
+    /**
+     * Searches for a shortest way to turn a board off.
+     * @param start the lights
+     * @param nodeLimit give up after expanding this many nodes
+     * @return true iff a solution was found, see {@link #solution()}; false if the thread was interrupted
+     */
+    boolean search(long start, long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+        expanded = 0;
+        int bound = pdb.estimate(start);
+        while (true) {
+            int t = dfs(start, 0L, 0, 0, bound);
+            if (t == FOUND) {
+                return true;
+            }
+            if (t == NOT_FOUND || expanded > nodeLimit) {
+                return false;
+            }
+            bound = t;
+        }
+    }
+
+    /**
+     * @return the smallest f above the bound seen below this node, or {@link #FOUND}
+     */
+    private int dfs(long state, long pressed, int g, int from, int bound) {
+        int f = g + pdb.estimate(state);
+        if (f > bound) {
+            return f;
+        }
+        if (state == 0) {
+            solution = pressed;
+            return FOUND;
+        }
+        if (++expanded > nodeLimit) {
+            return NOT_FOUND;
+        }
+        if ((expanded & 0xFFFF) == 0 && Thread.currentThread().isInterrupted()) {
+            nodeLimit = 0; // unwinds like running out of nodes
+            return NOT_FOUND;
+        }
+        int min = NOT_FOUND;
+        for (int i = from; i < cells; i++) {
+            int frozen = i / size - 1; // rows above this can't be changed by tile i or later
+            if (frozen > 0 && (state & ((1L << (frozen * size)) - 1)) != 0) {
+                break;
+            }
+            int t = dfs(state ^ masks[i], pressed | 1L << i, g + 1, i + 1, bound);
+            if (t == FOUND) {
+                return FOUND;
+            }
+            if (t < min) {
+                min = t;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @return the tiles to press, bit y*size+x, after a successful search
+     */
+    long solution() {
+        return solution;
+    }
+
+    /**
+     * @return nodes expanded by the last search, over every iteration
+     */
+    long expanded() {
+        return expanded;
+    }
+}
@@ -2,9 +2,21 @@ package model;
 
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /** Implements the game rules for Lights out. This will be the Model in the MVC paradigm, your GUIs window to the world.
  * In addition to the methods provided, this class provides an iterator that will allow you to loop through every Tile.
@@ -24,30 +36,107 @@ public class LightsOutModel implements Iterable<Tile>{
      * The message that will precede a hint.
      */
     public static String HINT_PREFIX = "Hint:";
+    /**
+     * Message sent instead of a hint when the board cannot be turned off.
+     */
+    public static String UNSOLVABLE = "unsolvable";
+    /**
+     * Message sent when a hint asked for with {@link #requestHint(long)} was not found within its time budget.
+     */
+    public static String HINT_TIMED_OUT = "hintTimedOut";
+    /**
+     * The time budget of {@link #requestHint()}.
+     */
+    public static final long DEFAULT_HINT_BUDGET_MILLIS = 5000;
+    /**
+     * The side length of a new model when none is given, the classic 5x5.
+     */
+    public static final int DEFAULT_DIMENSION = Board.DEFAULT_SIZE;
+    /**
+     * The smallest supported side length.
+     */
+    public static final int MIN_DIMENSION = 3;
+    /**
+     * The largest supported side length.
+     */
+    public static final int MAX_DIMENSION = 2000;
     private Random rng = null;
+    private BoardGenerator generator;
     private int moves;
+    private SolverMode solverMode = SolverMode.AUTO;
+    private String loadError;
+    private BoardCorpus corpus;
     Board board;
+    /**
+     * The number of lit tiles, kept up to date by every change to the board.
+     */
+    private int lit;
+    /**
+     * The presses that turn the board off, null until a hint solves it. {@link #toggleTile(int, int)} keeps it up to
+     * date by flipping the pressed tile's bit, since pressing a tile twice is the same as not pressing it, so further
+     * hints need no solving.
+     */
+    private Solution plan;
+    /**
+     * True if a press off the plan may open a shorter solution that solving again would find: boards of this size
+     * have quiet patterns and the solver mode gives shortest solutions. Otherwise the plan is kept whatever is pressed.
+     */
+    private boolean replanOffPlan;
+
+    /**
+     * Solves boards for {@link #requestHint(long)} off the caller's thread.
+     */
+    private static final ExecutorService HINT_WORKERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "hint");
+        t.setDaemon(true);
+        return t;
+    });
+    /**
+     * Announcements from {@link #requestHint(long)} waiting for {@link #deliverHints()}, when no notifier was set.
+     */
+    private final Queue<Runnable> undelivered = new ConcurrentLinkedQueue<>();
+    private Executor notifier = undelivered::add;
+    /**
+     * Bumped whenever the board changes, so a hint for an older board is never announced.
+     */
+    private volatile int version;
+    private CompletableFuture<Tile> pendingHint;
 
     /**
      *Gets the side length of the board.
      * @return The dimension (side length) of the board this model represents
      */
     public int getDimension(){
-        return Board.BOARD_SIZE;
+        return board.getSize();
     }
 
     /**
      * Those objects that are watching this object's every move
      */
-    private final List< Observer< LightsOutModel, String > > observers;
+    private final List< Observer< LightsOutModel, ModelEvent > > observers;
 
     /**
-     * Creates a new board (all tiles are off) , initializes observers list
+     * Creates a new 5x5 board (all tiles are off) , initializes observers list
      */
     public LightsOutModel() {
+        this(Board.DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a new NxN board (all tiles are off) , initializes observers list
+     * @param n the side length, between {@link #MIN_DIMENSION} and {@link #MAX_DIMENSION}
+     */
+    public LightsOutModel(int n) {
+        checkDimension(n);
         moves = 0;
         observers = new LinkedList<>();
-        board=new Board();
+        board=new Board(n);
+    }
+
+    private static void checkDimension(int n) {
+        if (n < MIN_DIMENSION || n > MAX_DIMENSION) {
+            throw new IllegalArgumentException("Board dimension must be between " + MIN_DIMENSION + " and " + MAX_DIMENSION + ": " + n);
+        }
     }
 
     /**
@@ -61,62 +150,184 @@ public class LightsOutModel implements Iterable<Tile>{
 
     /**
      * Attempts to load a board from a file object. It will announce to the observers if it was loaded successfully or not.
+     * The dimension of the board is taken from the number of values on the first line of the file.
+     * If loading fails, {@link #getLoadError()} tells why.
      * @param file The file to load
      * @return True iff loaded successfully
      */
     public boolean loadBoardFromFile(File file)  {
-        try {
-            Scanner in = new Scanner(file);
-            Iterator<Tile> it = board.iterator();
-
-            while (it.hasNext()) {
-                Tile t = it.next();
-                int v = in.nextInt();
-
-                if (v == 1) {
-                    t.setOn(true);
-                } else if (v == 0) {
-                    t.setOn(false);
-                } else {
-                    announce(LOAD_FAILED);
-                    return false; //invalid file
-                }
+        FlightEvents.Load event = new FlightEvents.Load();
+        event.begin();
+        boolean loaded = readBoardFile(file);
+        commitLoad(event, String.valueOf(file), loaded);
+        return loaded;
+    }
+
+    private boolean readBoardFile(File file) {
+        if (file == null) {
+            return loadFailed("No file chosen");
+        }
+        try (LobReader in = new LobReader(FileChannel.open(file.toPath()))) {
+            Board loaded = in.next();
+            if (loaded == null) {
+                return loadFailed(file + " holds no board");
             }
-            moves = 0;
-            announce(LOADED);
+            in.expectEnd();
+            if (loaded.getSize() < MIN_DIMENSION) {
+                return loadFailed(file + " holds a " + loaded.getSize() + "x" + loaded.getSize()
+                        + " board, the smallest supported is " + MIN_DIMENSION + "x" + MIN_DIMENSION);
+            }
+            replaceBoard(loaded);
+            return true;
+        } catch (IOException | InvalidPathException e) {
+            return loadFailed(file + ": " + e.getMessage());
+        }
+    }
 
+    /**
+     * Attempts to load board number k from a binary board corpus (see {@link BoardCorpus}). The corpus stays mapped,
+     * so loading further boards from the same file costs no more than reading their bits, until the file changes.
+     * It will announce to the observers if it was loaded successfully or not.
+     * @param file The corpus file
+     * @param k The board number, starting at 0
+     * @return True iff loaded successfully
+     */
+    public boolean loadBoardFromCorpus(File file, int k) {
+        FlightEvents.Load event = new FlightEvents.Load();
+        event.begin();
+        boolean loaded = readBoardCorpus(file, k);
+        commitLoad(event, file + "#" + k, loaded);
+        return loaded;
+    }
+
+    private boolean readBoardCorpus(File file, int k) {
+        if (file == null) {
+            return loadFailed("No file chosen");
+        }
+        try {
+            Path path = file.toPath();
+            if (corpus == null || !corpus.getFile().equals(path) || !corpus.isCurrent()) {
+                corpus = BoardCorpus.open(path);
+            }
+            if (k < 0 || k >= corpus.count()) {
+                return loadFailed(file + " holds " + corpus.count() + " boards, there is no board " + k);
+            }
+            int size = corpus.sizeOf(k);
+            if (size < MIN_DIMENSION || size > MAX_DIMENSION) {
+                return loadFailed("Board " + k + " of " + file + " is " + size + "x" + size);
+            }
+            replaceBoard(corpus.get(k));
             return true;
-        }catch (FileNotFoundException e) {
-            announce(LOAD_FAILED);
-            return false; //invalid file
+        } catch (IOException | InvalidPathException e) {
+            corpus = null;
+            return loadFailed(e.getMessage());
         }
+    }
 
+    /**
+     * Replaces the board with one read elsewhere, e.g. from a corpus shared by many models, and announces it.
+     * @param loaded a board between {@link #MIN_DIMENSION} and {@link #MAX_DIMENSION}, which now belongs to the model
+     * @param source names the board in the flight event
+     */
+    void loadBoard(Board loaded, String source) {
+        checkDimension(loaded.getSize());
+        FlightEvents.Load event = new FlightEvents.Load();
+        event.begin();
+        replaceBoard(loaded);
+        commitLoad(event, source, true);
+    }
 
+    private void replaceBoard(Board loaded) {
+        board = loaded;
+        moves = 0;
+        loadError = null;
+        boardReplaced();
+        announce(ModelEvent.of(ModelEvent.Kind.LOADED, LOADED, version));
+    }
+
+    private void commitLoad(FlightEvents.Load event, String source, boolean loaded) {
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.size = loaded ? getDimension() : 0;
+            event.error = loaded ? null : loadError;
+            event.commit();
+        }
+    }
+
+    private boolean loadFailed(String why) {
+        loadError = why;
+        announce(ModelEvent.of(ModelEvent.Kind.LOAD_FAILED, LOAD_FAILED, version));
+        return false; //invalid file
+    }
+
+    /**
+     * Explains why the last call to loadBoardFromFile failed, including the line and column of a malformed file.
+     * @return the reason, or null if the last load succeeded
+     */
+    public String getLoadError() {
+        return loadError;
     }
 
     /**
-     * Generates a randomized board. Will announce that the board was loaded successfully to every observer
+     * Generates a randomized board a few presses from solved. Will announce that the board was loaded successfully to every observer
      */
     public void generateRandomBoard(){
         int steps = getRNG().nextInt(6,10);
         generateRandomBoard(steps);
 
     }
+
+    /**
+     * Replaces the board with a dark one on which the given number of distinct random tiles were pressed.
+     */
      void generateRandomBoard(int steps){
+        board = getGenerator().next(Math.min(steps, getDimension() * getDimension()));
+        moves = 0;
+        boardReplaced();
+        announce(ModelEvent.of(ModelEvent.Kind.LOADED, LOADED, version));
+    }
 
-        List<Tile> unchanged = new ArrayList<>(Board.BOARD_SIZE*Board.BOARD_SIZE);
+    /**
+     * Generates a uniformly random board among all the boards of the current size that can be turned off. Will
+     * announce that the board was loaded successfully to every observer
+     */
+    public void generateSolvableBoard() {
+        board = getGenerator().next();
+        moves = 0;
+        boardReplaced();
+        announce(ModelEvent.of(ModelEvent.Kind.LOADED, LOADED, version));
+    }
 
-        for (Tile t : board){
-            unchanged.add(t);
-        }
-        Collections.shuffle(unchanged);
-        for (int s = 0; s<steps && s<unchanged.size(); s++) {
-            //   Solver.printBoard(board);
-            unchanged.get(s).toggle();
-        }
-        // Solver.printBoard(board);
-         moves = 0;
-        announce(LOADED);
+    /**
+     * Generates a random board whose shortest solution takes exactly the given number of presses, found from the
+     * structure of the solutions rather than by searching. Will announce that the board was loaded successfully to
+     * every observer
+     * @param presses the difficulty, the fewest presses that turn the board off
+     * @throws IllegalArgumentException if no board of the current size needs that many presses, or the size is too
+     * large for the shortest solution to be known (over 32x32 or with many quiet patterns)
+     */
+    public void generateBoardWithDifficulty(int presses) {
+        generateBoardWithDifficulty(presses, presses);
+    }
+
+    /**
+     * Generates a random board whose shortest solution takes between min and max presses.
+     * @see #generateBoardWithDifficulty(int)
+     */
+    public void generateBoardWithDifficulty(int min, int max) {
+        board = getGenerator().withMinimumPresses(min, max);
+        moves = 0;
+        boardReplaced();
+        announce(ModelEvent.of(ModelEvent.Kind.LOADED, LOADED, version));
+    }
+
+    /**
+     * Makes the random boards reproducible: the same seed and the same calls give the same boards.
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        rng = new Random(seed);
+        generator = null;
     }
 
     private Random getRNG(){
@@ -126,6 +337,13 @@ public class LightsOutModel implements Iterable<Tile>{
         return rng;
     }
 
+    private BoardGenerator getGenerator() {
+        if (generator == null || generator.getSize() != getDimension()) {
+            generator = new BoardGenerator(getDimension(), getRNG().nextLong());
+        }
+        return generator;
+    }
+
     /**
      * Gets the count of moves made for the current game
      * @return the current number of moves
@@ -140,34 +358,262 @@ public class LightsOutModel implements Iterable<Tile>{
      * @param y Y coordinate
      */
    public void toggleTile(int x, int y){
-       board.toggleTile(x,y);
+       FlightEvents.Toggle event = new FlightEvents.Toggle();
+       event.begin();
+       lit += board.toggleTileCounting(x,y);
        moves ++;
-       announce("(" + x + "," + y + ") has changed");
+       boardChanged();
+       updatePlan(x, y);
+       if (event.shouldCommit()) {
+           event.size = getDimension();
+           event.x = x;
+           event.y = y;
+           event.commit();
+       }
+       announce(ModelEvent.toggled(x, y, getDimension(), version));
+       if (lit == 0) {
+           announce(ModelEvent.of(ModelEvent.Kind.WON, "You win", version));
+       }
    }
 
     /**
-     * Gives a hint to the user. This requires solving the entire puzzle, it may take a long time or even run out of memory for sufficiently complex puzzles ran on weak baby machines.
-     * @return The Tile representing the next move the user should make
+     * Gives a hint to the user. The board is solved with the current {@link SolverMode}; the default solvers
+     * answer almost instantly even on large boards, {@link SolverMode#ASTAR} may take a long time or even run out of memory.
+     * The solution is kept and updated as tiles are pressed, so later hints for the same game are not solved again.
+     * Announces the hint, or {@link #UNSOLVABLE} if no sequence of presses turns the board off.
+     * @return The Tile representing the next move the user should make, null if the board is unsolvable or already off
+     * @throws CancellationException if the thread was interrupted while solving; nothing is announced
      */
    public Tile getHint(){
-       List<SearchNode> sPath = Solver.aStar(new LOSearchNode(new Board(this.board)), new Board());
-       SearchNode next = sPath.get(1);
-       Tile ret = this.board.getTile(next.source.x,next.source.y);
-       announce(HINT_PREFIX+" "+ret.getX()+", "+ret.getY());
-      // return this.board.getTile(next.source.x,next.source.y);
+       if (plan == null) {
+           setPlan(solve(board, solverMode));
+       }
+       return announceHint(plannedPress(plan));
+   }
+
+    /**
+     * Asks for a hint without blocking, with the default time budget of {@link #DEFAULT_HINT_BUDGET_MILLIS}.
+     * @see #requestHint(long)
+     */
+    public CompletableFuture<Tile> requestHint() {
+        return requestHint(DEFAULT_HINT_BUDGET_MILLIS);
+    }
+
+    /**
+     * Asks for a hint without blocking. The current board is solved on a background thread with the current
+     * {@link SolverMode}, and the hint is announced like {@link #getHint()} does, through the notifier set with
+     * {@link #setNotifier(Executor)} or else by the next {@link #deliverHints()}. A request still running when the
+     * board changes, the solver mode changes or another hint is requested is cancelled and announces nothing. One that
+     * runs out of time is cancelled and announces {@link #HINT_TIMED_OUT}.
+     * @param budgetMillis how long the solver may take
+     * @return completes with the hint (null if the board is unsolvable or already off) after it has been announced,
+     * or exceptionally if the request was cancelled or timed out. Cancelling it stops the solver.
+     */
+    public CompletableFuture<Tile> requestHint(long budgetMillis) {
+        cancelHint();
+        int asked = version;
+        Executor notifier = this.notifier;
+        CompletableFuture<Tile> result = new CompletableFuture<>();
+        if (plan != null) {
+            Solution known = plan;
+            pendingHint = result;
+            notifier.execute(() -> deliverHint(result, asked, known));
+            return result;
+        }
+        Board snapshot = new Board(board);
+        SolverMode mode = solverMode;
+        Future<?> task = HINT_WORKERS.submit(() -> {
+            Solution solved;
+            try {
+                solved = solve(snapshot, mode);
+            } catch (CancellationException e) {
+                return; // the request was cancelled or timed out, which stopped the search
+            }
+            if (!result.isDone()) {
+                notifier.execute(() -> deliverHint(result, asked, solved));
+            }
+        });
+        result.orTimeout(budgetMillis, TimeUnit.MILLISECONDS).whenComplete((tile, e) -> {
+            if (e == null) {
+                return;
+            }
+            task.cancel(true); // the searches give up when interrupted
+            if (e instanceof TimeoutException) {
+                notifier.execute(() -> {
+                    if (asked == version) {
+                        announce(ModelEvent.of(ModelEvent.Kind.HINT_TIMED_OUT, HINT_TIMED_OUT, asked));
+                    }
+                });
+            }
+        });
+        pendingHint = result;
+        return result;
+    }
+
+    /**
+     * Cancels the hint asked for with {@link #requestHint(long)}, if it is still running. Nothing is announced.
+     */
+    public void cancelHint() {
+        CompletableFuture<Tile> pending = pendingHint;
+        if (pending != null) {
+            pending.cancel(false);
+            pendingHint = null;
+        }
+    }
+
+    /**
+     * Chooses the thread hints from {@link #requestHint(long)} are announced on, e.g. Platform::runLater for a JavaFX
+     * view. It must be the thread that uses the model, since announcing a hint also updates the model. Without a
+     * notifier, announcements wait for {@link #deliverHints()}.
+     * @param notifier runs the announcements
+     */
+    public void setNotifier(Executor notifier) {
+        this.notifier = Objects.requireNonNull(notifier);
+        for (Runnable r = undelivered.poll(); r != null; r = undelivered.poll()) {
+            notifier.execute(r);
+        }
+    }
+
+    /**
+     * Announces the hints from {@link #requestHint(long)} that were found since the last call, on the calling thread,
+     * for models without a notifier. Call it from the thread that uses the model.
+     */
+    public void deliverHints() {
+        for (Runnable r = undelivered.poll(); r != null; r = undelivered.poll()) {
+            r.run();
+        }
+    }
+
+    private void deliverHint(CompletableFuture<Tile> result, int asked, Solution solved) {
+        if (result.isDone()) {
+            return; // cancelled or timed out while waiting for the notifier
+        }
+        if (asked != version) {
+            result.cancel(false);
+            return;
+        }
+        if (plan != solved) {
+            setPlan(solved);
+        }
+        result.complete(announceHint(plannedPress(solved)));
+    }
+
+    private void boardChanged() {
+        version++;
+        cancelHint();
+    }
+
+    /**
+     * For a board that was loaded or generated rather than pressed.
+     */
+    private void boardReplaced() {
+        lit = board.countOn();
+        plan = null;
+        boardChanged();
+    }
+
+    private void setPlan(Solution solved) {
+        plan = solved;
+        replanOffPlan = ChaseSolver.forSize(getDimension()).nullity() != 0 && Solver.minimizes(solverMode, getDimension());
+    }
+
+    /**
+     * Keeps the plan a solution of the board after (x,y) was pressed. An unsolvable board stays unsolvable.
+     */
+    private void updatePlan(int x, int y) {
+        if (plan == null || !plan.isSolvable()) {
+            return;
+        }
+        Board presses = plan.getPresses();
+        boolean planned = presses.isOn(x, y);
+        presses.flip(x, y);
+        if (!planned && replanOffPlan) {
+            // a press off the plan may have made a shorter solution through a quiet pattern, so solve again
+            plan = null;
+        }
+    }
+
+    /**
+     * @return the next press as y*size+x, -1 if the board is off, or {@link DistanceTable#UNSOLVABLE}
+     */
+    private static int plannedPress(Solution solution) {
+        return solution.isSolvable() ? solution.nextPress() : DistanceTable.UNSOLVABLE;
+    }
+
+    /**
+     * Solves a board for a hint through the shared {@link HintCache}, recording the metrics and flight event of the
+     * hint.
+     * @return a solution whose presses belong to the caller
+     */
+    private static Solution solve(Board b, SolverMode mode) {
+        FlightEvents.Hint event = new FlightEvents.Hint();
+        event.begin();
+        Solution solution;
+        if (!SolverMetrics.isEnabled()) {
+            solution = HintCache.shared().solve(b, mode);
+        } else {
+            long bytes = SolverMetrics.allocatedBytes();
+            long start = System.nanoTime();
+            solution = HintCache.shared().solve(b, mode);
+            SolverMetrics.global().recordHint(System.nanoTime() - start, SolverMetrics.allocatedBytes() - bytes);
+        }
+        if (event.shouldCommit()) {
+            event.size = b.getSize();
+            event.mode = mode.name();
+            event.next = plannedPress(solution);
+            event.commit();
+        }
+        return solution;
+    }
+
+    private Tile announceHint(int next) {
+       if (next == DistanceTable.UNSOLVABLE) {
+           announce(ModelEvent.of(ModelEvent.Kind.UNSOLVABLE, UNSOLVABLE, version));
+           return null;
+       }
+       if (next < 0) {
+           return null;
+       }
+       Tile ret = this.board.getTile(next % getDimension(), next / getDimension());
+       announce(ModelEvent.hint(ret.getX(), ret.getY(), version));
        return ret;
    }
+
+    /**
+     * Gets the solver metrics: hint latency, search sizes, cache hits and allocation. They are shared by every model
+     * and only recorded while {@link SolverMetrics#setEnabled(boolean)} is on. Hints answered from the solution kept
+     * since an earlier hint involve no solving and are not counted.
+     * @return the metrics of this process
+     */
+    public SolverMetrics getSolverMetrics() {
+        return SolverMetrics.global();
+    }
+
     /**
-     * Tests is the game has been won.
+     * Chooses the strategy {@link #getHint()} uses.
+     * @param mode the solver to use for future hints
+     */
+    public void setSolverMode(SolverMode mode) {
+        if (Objects.requireNonNull(mode) != solverMode) {
+            solverMode = mode;
+            plan = null;
+            cancelHint(); // its answer would come from the old solver
+        }
+    }
+
+    /**
+     * @return the strategy {@link #getHint()} uses
+     */
+    public SolverMode getSolverMode() {
+        return solverMode;
+    }
+
+    /**
+     * Tests is the game has been won. Takes constant time, the lit tiles are counted as they change.
      * @return True iff every tile on the board is off.
      */
     public boolean gameOver(){
-        for (Tile t : board){
-            if (t.isOn()){
-                return  false;
-            }
-        }
-        return true;
+        return lit == 0;
     }
 
     /**
@@ -180,13 +626,22 @@ public class LightsOutModel implements Iterable<Tile>{
         return board.getTile(x,y);
     }
 
+    /**
+     * Copies row y of the board as packed bits, so a view can draw a large board without a Tile per light.
+     * @param y the row
+     * @param dest receives the row, tile (x,y) is bit x % 64 of dest[x / 64]; needs ceil(dimension/64) longs
+     */
+    public void getRow(int y, long[] dest) {
+        board.getRow(y, dest);
+    }
+
     /**
      * Add a new observer to the list for this model
      * @param obs an object that wants an
      *            {@link Observer#update(Object, Object)}
      *            when something changes here
      */
-    public void addObserver( Observer< LightsOutModel, String > obs ) {
+    public void addObserver( Observer< LightsOutModel, ModelEvent > obs ) {
         this.observers.add( obs );
     }
 
@@ -202,13 +657,10 @@ public class LightsOutModel implements Iterable<Tile>{
         }
     }
 
-    private void announce(){
-        announce("");
-    }
     /**
      * Announce to observers the model has changed;
      */
-    private void announce( String arg ) {
+    private void announce( ModelEvent arg ) {
         for ( var obs : this.observers ) {
             obs.update( this, arg );
         }
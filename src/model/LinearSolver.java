@@ -0,0 +1,124 @@
+package model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Solves Lights Out as the linear system A*p = b over GF(2), where A is the toggle matrix of the board, b the lit
+ * tiles and p the presses. The elimination of A is done once per board size and cached; solving a board afterwards
+ * is one parity check per matrix row.
+ */
+class LinearSolver {
+    /**
+     * Null spaces larger than this are not searched for the shortest solution.
+     */
+    static final int MAX_MINIMIZE_NULLITY = 12;
+    /**
+     * The toggle matrix has size^4 entries, past this use {@link ChaseSolver}.
+     */
+    static final int MAX_SIZE = 32;
+
+    private static final Map<Integer, LinearSolver> CACHE = new ConcurrentHashMap<>();
+
+    private final int size;
+    private final Elimination elimination;
+
+    private LinearSolver(int size) {
+        FlightEvents.Phase event = new FlightEvents.Phase();
+        event.begin();
+        this.size = size;
+        int cells = size * size;
+        long[][] matrix = new long[cells][];
+        Board b = new Board(size);
+        for (int i = 0; i < cells; i++) {
+            b.clear();
+            b.toggleTile(i % size, i / size);
+            matrix[i] = b.toVector(); //A is symmetric, so column i is row i
+        }
+        elimination = new Elimination(matrix);
+        FlightEvents.phase(event, "linear elimination", size);
+    }
+
+    /**
+     * Gets the solver for a board size, running the elimination the first time that size is seen.
+     * @param size side length of the board, at most {@link #MAX_SIZE}
+     * @return the shared solver for that size
+     */
+    static LinearSolver forSize(int size) {
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Linear solver supports boards up to " + MAX_SIZE + "x" + MAX_SIZE + ": " + size);
+        }
+        LinearSolver cached = CACHE.get(size);
+        SolverMetrics.recordCacheLookup(cached != null);
+        return cached != null ? cached : CACHE.computeIfAbsent(size, LinearSolver::new);
+    }
+
+    /**
+     * Solves a board, picking the shortest of the possible solutions when the null space is small enough to search.
+     * @param board the board to turn off; it is not modified
+     * @return the presses, or {@link Solution#UNSOLVABLE}
+     */
+    Solution solve(Board board) {
+        long[] p = elimination.solve(board.toVector());
+        if (p == null) {
+            return Solution.UNSOLVABLE;
+        }
+        long[][] quiet = elimination.nullBasis();
+        if (quiet.length > 0 && quiet.length <= MAX_MINIMIZE_NULLITY) {
+            p = shortest(p, quiet);
+        }
+        return new Solution(Board.fromVector(size, p));
+    }
+
+    /**
+     * Finds the shortest press set with the same effect as the given one, by adding every combination of quiet
+     * patterns. Its length is the minimum number of presses for the board the given presses make.
+     * @param p presses, bit y*size+x; not modified
+     * @return the shortest equivalent presses, possibly p itself
+     * @throws IllegalArgumentException if the null space is too large to search
+     */
+    long[] shortestEquivalent(long[] p) {
+        long[][] quiet = elimination.nullBasis();
+        if (quiet.length > MAX_MINIMIZE_NULLITY) {
+            throw new IllegalArgumentException("The null space of " + size + "x" + size + " is too large to search");
+        }
+        return quiet.length == 0 ? p : shortest(p, quiet);
+    }
+
+    /**
+     * Walks every combination of quiet patterns in Gray code order and keeps the solution with the fewest presses.
+     */
+    private static long[] shortest(long[] p, long[][] quiet) {
+        long[] curr = p.clone();
+        long[] best = p.clone();
+        int bestCount = Elimination.count(p);
+        int combos = 1 << quiet.length;
+        for (int g = 1; g < combos; g++) {
+            Elimination.xor(curr, quiet[Integer.numberOfTrailingZeros(g)]);
+            int c = Elimination.count(curr);
+            if (c < bestCount) {
+                bestCount = c;
+                System.arraycopy(curr, 0, best, 0, curr.length);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the dimension of the null space; 2^nullity solutions exist for every solvable board
+     */
+    int nullity() {
+        return elimination.nullBasis().length;
+    }
+
+    /**
+     * @return press patterns that leave every board unchanged, as vectors of bit y*size+x
+     */
+    long[][] quietPatterns() {
+        return elimination.nullBasis();
+    }
+
+    int getSize() {
+        return size;
+    }
+}
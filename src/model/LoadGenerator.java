@@ -0,0 +1,298 @@
+package model;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a {@link GameServer} with simulated players to measure its throughput and tail latency. Each player has its
+ * own connection and plays games by asking for a hint and pressing the hinted tile until the board is off, then starts
+ * a new game, waiting a random think time (exponential, with the given mean) before each request. All players run on
+ * one selector thread, so ten thousand players need no more threads than one.
+ * <p>
+ * Latency is measured from sending a request to reading its reply, per request kind, and printed with the throughput
+ * when the run ends.
+ * <pre>
+ * model.LoadGenerator [-port P] [-players N] [-seconds S] [-think MS] [-size N] [-seed S]
+ * </pre>
+ */
+class LoadGenerator {
+    /**
+     * Connections being opened at once, so the server's accept backlog never overflows.
+     */
+    private static final int CONNECTING_LIMIT = 256;
+
+    private final InetSocketAddress server;
+    private final int size;
+    private final long thinkNanos;
+    private final SplittableRandom rng;
+    private final Selector selector;
+
+    private final LatencyHistogram newGames = new LatencyHistogram();
+    private final LatencyHistogram hints = new LatencyHistogram();
+    private final LatencyHistogram toggles = new LatencyHistogram();
+    private long won;
+    private long errors;
+    private int connected;
+    private int connecting;
+
+    private final ArrayDeque<Player> waitingToConnect = new ArrayDeque<>();
+    private final PriorityQueue<Player> thinking = new PriorityQueue<>((a, b) -> Long.compare(a.due, b.due));
+
+    LoadGenerator(InetSocketAddress server, int players, int size, long thinkMillis, long seed) throws IOException {
+        this.server = server;
+        this.size = size;
+        this.thinkNanos = TimeUnit.MILLISECONDS.toNanos(thinkMillis);
+        this.rng = new SplittableRandom(seed);
+        this.selector = Selector.open();
+        for (int i = 0; i < players; i++) {
+            waitingToConnect.add(new Player());
+        }
+    }
+
+    /**
+     * Plays until the time is up, then disconnects every player.
+     */
+    void run(long nanos) throws IOException {
+        long end = System.nanoTime() + nanos;
+        for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+            while (connecting < CONNECTING_LIMIT && !waitingToConnect.isEmpty()) {
+                waitingToConnect.poll().connect();
+            }
+            while (!thinking.isEmpty() && thinking.peek().due <= now) {
+                thinking.poll().sendNext();
+            }
+            long wait = thinking.isEmpty() ? end - now : Math.min(end - now, thinking.peek().due - now);
+            selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Player p = (Player) key.attachment();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isConnectable()) {
+                    p.finishConnect();
+                } else {
+                    if (key.isWritable()) {
+                        p.flush();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        p.read();
+                    }
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private long think() {
+        return thinkNanos == 0 ? 0 : (long) (-Math.log(1 - rng.nextDouble()) * thinkNanos);
+    }
+
+    void printStats(PrintStream ps, long wallNanos) {
+        long requests = newGames.count() + hints.count() + toggles.count();
+        ps.printf("Players: %d connected; games won: %d; errors: %d%n", connected, won, errors);
+        ps.printf("Requests: %d in %.1fs, throughput: %.0f requests/s%n",
+                requests, wallNanos / 1e9, requests / (wallNanos / 1e9));
+        print(ps, "NEW", newGames);
+        print(ps, "HINT", hints);
+        print(ps, "TOGGLE", toggles);
+    }
+
+    private static void print(PrintStream ps, String name, LatencyHistogram h) {
+        ps.printf("%-6s latency us: mean %.1f, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n", name,
+                h.mean() / 1000, h.percentile(50) / 1000, h.percentile(90) / 1000, h.percentile(99) / 1000,
+                h.percentile(99.9) / 1000, h.max() / 1000);
+    }
+
+    /**
+     * One simulated player: a connection that always has at most one request outstanding.
+     */
+    private final class Player {
+        private SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(256);
+        private ByteBuffer out = ByteBuffer.allocate(0);
+        private String next = "NEW " + size;
+        private LatencyHistogram sentKind;
+        private long sentAt;
+        private long due;
+        private boolean closed;
+
+        void connect() throws IOException {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connecting++;
+            if (channel.connect(server)) {
+                key = channel.register(selector, SelectionKey.OP_READ, this);
+                connected();
+            } else {
+                key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            }
+        }
+
+        void finishConnect() {
+            try {
+                channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                connected();
+            } catch (IOException e) {
+                connecting--;
+                errors++;
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException closing) {
+                    // already gone
+                }
+                waitingToConnect.add(new Player()); // try again with a fresh connection
+            }
+        }
+
+        private void connected() {
+            connecting--;
+            connected++;
+            sendNext();
+        }
+
+        void sendNext() {
+            if (closed) {
+                return;
+            }
+            sentKind = next.startsWith("NEW") ? newGames : next.startsWith("HINT") ? hints : toggles;
+            out = ByteBuffer.wrap((next + "\n").getBytes(StandardCharsets.US_ASCII));
+            sentAt = System.nanoTime();
+            flush();
+        }
+
+        void flush() {
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                disconnect();
+                return;
+            }
+            key.interestOps(out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    disconnect();
+                    return;
+                }
+            } catch (IOException e) {
+                disconnect();
+                return;
+            }
+            for (int i = 0; i < in.position(); i++) {
+                if (in.get(i) == '\n') {
+                    long now = System.nanoTime();
+                    sentKind.record(now - sentAt);
+                    String reply = new String(in.array(), 0, i, StandardCharsets.US_ASCII);
+                    in.limit(in.position()).position(i + 1);
+                    in.compact();
+                    next = play(reply);
+                    due = now + think();
+                    thinking.add(this);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the request to make after this reply
+         */
+        private String play(String reply) {
+            if (reply.startsWith("HINT ")) {
+                return "TOGGLE " + reply.substring(5);
+            }
+            if (reply.startsWith("OK")) {
+                return "HINT";
+            }
+            if (reply.startsWith("WON")) {
+                won++;
+            } else if (!reply.equals("OFF")) {
+                errors++; // ERR, or an unsolvable board from a solvable start
+            }
+            return "NEW " + size;
+        }
+
+        private void disconnect() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            errors++;
+            connected--;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+    }
+
+    /**
+     * Runs a load test against a server on this machine.
+     * @param args options, see the class comment
+     */
+    public static void main(String[] args) throws IOException {
+        int port = GameServer.DEFAULT_PORT;
+        int players = 10_000;
+        int seconds = 30;
+        long think = 100;
+        int size = Board.DEFAULT_SIZE;
+        long seed = System.nanoTime();
+        for (int a = 0; a < args.length; a++) {
+            switch (args[a]) {
+                case "-port":
+                    port = Integer.parseInt(args[++a]);
+                    break;
+                case "-players":
+                    players = Integer.parseInt(args[++a]);
+                    break;
+                case "-seconds":
+                    seconds = Integer.parseInt(args[++a]);
+                    break;
+                case "-think":
+                    think = Long.parseLong(args[++a]);
+                    break;
+                case "-size":
+                    size = Integer.parseInt(args[++a]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++a]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[a]);
+                    System.err.println("Usage: model.LoadGenerator [-port P] [-players N] [-seconds S] [-think MS] [-size N] [-seed S]");
+                    System.exit(2);
+            }
+        }
+        LoadGenerator load = new LoadGenerator(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                players, size, think, seed);
+        long start = System.nanoTime();
+        load.run(TimeUnit.SECONDS.toNanos(seconds));
+        load.printStats(System.out, System.nanoTime() - start);
+    }
+}
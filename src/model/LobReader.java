@@ -0,0 +1,171 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads boards in the .lob text format: N lines of N values, each 0 or 1, separated by whitespace. The size of each
+ * board is the number of values on its first line. A stream may hold several boards separated by blank lines.
+ * <p>
+ * The stream is read through one reusable buffer and each value goes straight into the row bits of the board, so a
+ * board of millions of tiles is parsed in a single pass without allocating per tile.
+ */
+class LobReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int EOF = -1;
+
+    private final ReadableByteChannel in;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] bytes = buffer.array();
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    private final long[] firstRow = new long[(LightsOutModel.MAX_DIMENSION + 63) >>> 6];
+    private long[] row = new long[0];
+
+    // where the next byte is
+    private int line = 1;
+    private int column = 1;
+    private int lineEnd;
+
+    LobReader(ReadableByteChannel in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next board.
+     * @return the board, or null if the stream holds no more boards
+     * @throws BoardFormatException if the board is malformed
+     * @throws IOException if the stream can't be read
+     */
+    Board next() throws IOException {
+        int n;
+        do {
+            Arrays.fill(firstRow, 0);
+            n = readRow(firstRow, LightsOutModel.MAX_DIMENSION);
+            if (n == EOF) {
+                return null;
+            }
+        } while (n == 0);
+
+        Board b = new Board(n);
+        b.setRow(0, firstRow);
+        int words = (n + 63) >>> 6;
+        if (row.length < words) {
+            row = new long[words];
+        }
+        for (int y = 1; y < n; y++) {
+            Arrays.fill(row, 0, words, 0);
+            int rowLine = line;
+            int found = readRow(row, n);
+            if (found <= 0) {
+                throw new BoardFormatException("Expected " + n + " rows but found " + y, rowLine, 1);
+            }
+            if (found < n) {
+                throw new BoardFormatException("Expected " + n + " values but found " + found, rowLine, lineEnd);
+            }
+            b.setRow(y, row);
+        }
+        return b;
+    }
+
+    /**
+     * Checks that only whitespace is left, for files that hold a single board.
+     * @throws BoardFormatException if anything else follows the board read last
+     * @throws IOException if the stream can't be read
+     */
+    void expectEnd() throws IOException {
+        int c;
+        while ((c = read()) != EOF) {
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                throw new BoardFormatException("Expected the end of the file but found more", line, column - 1);
+            }
+        }
+    }
+
+    /**
+     * Reads the values of one line into the bits of a row.
+     * @return the number of values read, 0 for a blank line, {@link #EOF} at the end of the stream
+     */
+    private int readRow(long[] bits, int max) throws IOException {
+        int count = 0;
+        boolean any = false;
+        while (true) {
+            int c = read();
+            switch (c) {
+                case EOF:
+                    lineEnd = column;
+                    return any || count > 0 ? count : EOF;
+                case '\n':
+                    return count;
+                case ' ':
+                case '\t':
+                case '\r':
+                    any = true;
+                    break;
+                case '0':
+                case '1':
+                    if (count == max) {
+                        throw new BoardFormatException("Expected " + max + " values but found more", line, column - 1);
+                    }
+                    if (c == '1') {
+                        bits[count >>> 6] |= 1L << count;
+                    }
+                    count++;
+                    int after = peek();
+                    if (after != EOF && after != ' ' && after != '\t' && after != '\r' && after != '\n') {
+                        throw new BoardFormatException("Expected 0 or 1 but found more digits", line, column);
+                    }
+                    break;
+                default:
+                    throw new BoardFormatException("Expected 0 or 1 but found '" + (char) c + "'", line, column - 1);
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return EOF;
+        }
+        int c = bytes[pos++] & 0xFF;
+        if (c == '\n') {
+            lineEnd = column;
+            line++;
+            column = 1;
+        } else {
+            column++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return EOF;
+        }
+        return bytes[pos] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        while (!eof) {
+            buffer.clear();
+            int r = in.read(buffer);
+            if (r < 0) {
+                eof = true;
+            } else if (r > 0) {
+                pos = 0;
+                limit = r;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
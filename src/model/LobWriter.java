@@ -0,0 +1,42 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes boards in the .lob text format read by {@link LobReader}, separating boards with a blank line.
+ */
+class LobWriter implements Closeable {
+    private final BufferedWriter out;
+    private char[] line = new char[0];
+    private boolean first = true;
+
+    LobWriter(Writer out) {
+        this.out = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out, 1 << 16);
+    }
+
+    void write(Board b) throws IOException {
+        int n = b.getSize();
+        if (line.length < 2 * n) {
+            line = new char[2 * n];
+        }
+        if (!first) {
+            out.write('\n');
+        }
+        first = false;
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                line[2 * x] = b.isOn(x, y) ? '1' : '0';
+                line[2 * x + 1] = x < n - 1 ? ' ' : '\n';
+            }
+            out.write(line, 0, 2 * n);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,95 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing set of longs with linear probing, for search states that do not fit a bitset.
+ * Not thread safe.
+ */
+class LongSet {
+    private static final long EMPTY = 0;
+    private static final int MIN_CAPACITY = 1 << 10;
+
+    private long[] keys;
+    private int size;
+    private boolean hasZero;
+
+    LongSet() {
+        keys = new long[MIN_CAPACITY];
+    }
+
+    /**
+     * @return true iff the key was not in the set already
+     */
+    boolean add(long key) {
+        if (key == EMPTY) {
+            boolean added = !hasZero;
+            hasZero = true;
+            return added;
+        }
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return false;
+            }
+            if (k == EMPTY) {
+                keys[i] = key;
+                if (++size * 2 > keys.length) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    boolean contains(long key) {
+        if (key == EMPTY) {
+            return hasZero;
+        }
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return true;
+            }
+            if (k == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    int size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    void clear() {
+        if (keys.length > MIN_CAPACITY) {
+            keys = new long[MIN_CAPACITY];
+        } else {
+            Arrays.fill(keys, EMPTY);
+        }
+        size = 0;
+        hasZero = false;
+    }
+
+    private void grow() {
+        long[] old = keys;
+        keys = new long[old.length * 2];
+        int mask = keys.length - 1;
+        for (long k : old) {
+            if (k != EMPTY) {
+                int i = slot(k, mask);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) & mask;
+    }
+}
@@ -0,0 +1,147 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * What a {@link LightsOutModel} tells its observers. Besides its kind, a toggle carries the tiles whose lights
+ * changed, so a view can repaint just those, and a hint carries the tile to press.
+ * {@link #getMessage()} gives the text the model used to send, e.g. {@link LightsOutModel#LOADED}.
+ * <p>
+ * Every event carries the version of the board it describes. Versions grow with each change to the board, a load or
+ * a press, so a view that hears from several threads (see {@link ConcurrentLightsOutModel}) can tell which event is
+ * newer and ignore the older one.
+ */
+public final class ModelEvent {
+    /**
+     * The kinds of event.
+     */
+    public enum Kind {
+        /**
+         * A new board replaced the old one, possibly of a different size. Everything should be redrawn.
+         */
+        LOADED,
+        /**
+         * A board failed to load, see {@link LightsOutModel#getLoadError()}. The board did not change.
+         */
+        LOAD_FAILED,
+        /**
+         * A tile was pressed. The changed tiles are the pressed one and its neighbors on the board.
+         */
+        TOGGLED,
+        /**
+         * A hint was found. The hint is the only changed tile, and the board did not change.
+         */
+        HINT,
+        /**
+         * No hint exists because the board cannot be turned off.
+         */
+        UNSOLVABLE,
+        /**
+         * An asynchronous hint ran out of time.
+         */
+        HINT_TIMED_OUT,
+        /**
+         * The last toggle turned every light off. Sent right after its {@link #TOGGLED} event.
+         */
+        WON
+    }
+
+    private static final int[] NONE = {};
+    private static final int[][] PRESS_OFFSETS = {{0, 0}, {-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+    private final Kind kind;
+    /**
+     * Null for toggles and hints, whose text is made from their first cell only when asked for.
+     */
+    private final String message;
+    /**
+     * The changed tiles as x, y pairs, the pressed or hinted tile first.
+     */
+    private final int[] cells;
+    private final long version;
+
+    private ModelEvent(Kind kind, String message, int[] cells, long version) {
+        this.kind = kind;
+        this.message = message;
+        this.cells = cells;
+        this.version = version;
+    }
+
+    static ModelEvent of(Kind kind, String message, long version) {
+        return new ModelEvent(kind, message, NONE, version);
+    }
+
+    /**
+     * @return the event for pressing (x, y) on a board with the given side length
+     */
+    static ModelEvent toggled(int x, int y, int size, long version) {
+        int[] cells = new int[10];
+        int n = 0;
+        for (int[] d : PRESS_OFFSETS) {
+            int cx = x + d[0];
+            int cy = y + d[1];
+            if (cx >= 0 && cx < size && cy >= 0 && cy < size) {
+                cells[n++] = cx;
+                cells[n++] = cy;
+            }
+        }
+        return new ModelEvent(Kind.TOGGLED, null, n == cells.length ? cells : Arrays.copyOf(cells, n), version);
+    }
+
+    static ModelEvent hint(int x, int y, long version) {
+        return new ModelEvent(Kind.HINT, null, new int[]{x, y}, version);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the version of the board this event describes; for a toggle, the board right after that press
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return a description of the event for display
+     */
+    public String getMessage() {
+        switch (kind) {
+            case TOGGLED:
+                return "(" + cells[0] + "," + cells[1] + ") has changed";
+            case HINT:
+                return LightsOutModel.HINT_PREFIX + " " + cells[0] + ", " + cells[1];
+            default:
+                return message;
+        }
+    }
+
+    /**
+     * @return how many tiles changed: up to five for a toggle, one for a hint, none otherwise
+     */
+    public int getChangedCount() {
+        return cells.length / 2;
+    }
+
+    /**
+     * @param i which changed tile, from 0 to {@link #getChangedCount()} - 1
+     * @return its x coordinate
+     */
+    public int getChangedX(int i) {
+        return cells[2 * i];
+    }
+
+    /**
+     * @param i which changed tile, from 0 to {@link #getChangedCount()} - 1
+     * @return its y coordinate
+     */
+    public int getChangedY(int i) {
+        return cells[2 * i + 1];
+    }
+
+    @Override
+    public String toString() {
+        return kind + ": " + getMessage();
+    }
+}
@@ -0,0 +1,198 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.LongToIntFunction;
+
+/**
+ * A* over boards of at most {@link Board#PACKED_LIMIT} tiles per side that allocates nothing per node.
+ * <p>
+ * A search node is just two longs: the lights and the set of tiles pressed so far. Since presses commute, the pressed
+ * set is both the moves-used mask and the path back to the start, and g is its bit count. The open list is a bucket
+ * of node pairs per f value, popped last in first out so ties go to the deepest node. The closed set is a bitset over
+ * every board for up to 25 tiles and an open addressing hash set above that. All arrays are kept between searches.
+ */
+class PackedAStar {
+    /**
+     * Boards with at most this many tiles use a bitset as the closed set (4MB for 25 tiles).
+     */
+    static final int BITSET_CELLS = 25;
+
+    private final int size;
+    private final int cells;
+    private final long[] masks;
+    private final LongToIntFunction heuristic;
+
+    private final long[][] buckets;
+    private final int[] bucketLen;
+    private int lowest;
+    private int open;
+
+    private final long[] closedBits;
+    private final LongSet closedSet;
+
+    private long expanded;
+    private int peakOpen;
+    private long solution;
+
+    /**
+     * @param size the side length of the boards to search
+     * @param heuristic estimates the presses left for a board's bits
+     */
+    PackedAStar(int size, LongToIntFunction heuristic) {
+        if (size > Board.PACKED_LIMIT) {
+            throw new IllegalArgumentException("Packed search supports boards up to " + Board.PACKED_LIMIT + "x" + Board.PACKED_LIMIT);
+        }
+        this.size = size;
+        cells = size * size;
+        masks = Board.toggleMasks(size);
+        this.heuristic = heuristic;
+        buckets = new long[2 * cells + 2][];
+        bucketLen = new int[buckets.length];
+        for (int f = 0; f < buckets.length; f++) {
+            buckets[f] = new long[16];
+        }
+        if (cells <= BITSET_CELLS) {
+            closedBits = new long[Math.max(1, (1 << cells) >>> 6)];
+            closedSet = null;
+        } else {
+            closedBits = null;
+            closedSet = new LongSet();
+        }
+    }
+
+    /**
+     * The heuristic the original search used: the number of lit tiles. It is not admissible, one press can turn off
+     * up to five lights, so the plans it finds are not always the shortest.
+     */
+    static int litTiles(long bits) {
+        return Long.bitCount(bits);
+    }
+
+    /**
+     * Searches for a way to turn a board off.
+     * @param start the lights
+     * @param nodeLimit give up after expanding this many nodes
+     * @return true iff a solution was found, see {@link #solution()}; false if the thread was interrupted
+     */
+    boolean search(long start, long nodeLimit) {
+        reset();
+        push(start, 0L, heuristic.applyAsInt(start));
+        while (open > 0) {
+            while (bucketLen[lowest] == 0) {
+                lowest++;
+            }
+            long[] bucket = buckets[lowest];
+            int len = bucketLen[lowest] -= 2;
+            open--;
+            long state = bucket[len];
+            long pressed = bucket[len + 1];
+            if (state == 0) {
+                solution = pressed;
+                return true;
+            }
+            if (!close(state)) {
+                continue; // a stale duplicate
+            }
+            if (++expanded > nodeLimit) {
+                return false;
+            }
+            if ((expanded & 0xFFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            int g = Long.bitCount(pressed) + 1;
+            for (int i = 0; i < cells; i++) {
+                if ((pressed >>> i & 1L) != 0) {
+                    continue;
+                }
+                long child = state ^ masks[i];
+                if (isClosed(child)) {
+                    continue;
+                }
+                push(child, pressed | 1L << i, g + heuristic.applyAsInt(child));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the tiles to press, bit y*size+x, after a successful search
+     */
+    long solution() {
+        return solution;
+    }
+
+    /**
+     * @return nodes expanded by the last search
+     */
+    long expanded() {
+        return expanded;
+    }
+
+    /**
+     * @return the most nodes the open list held at once in the last search
+     */
+    int peakOpen() {
+        return peakOpen;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    private void push(long state, long pressed, int f) {
+        if (f >= buckets.length) {
+            f = buckets.length - 1; // only reachable with a wildly inadmissible heuristic
+        }
+        long[] bucket = buckets[f];
+        int len = bucketLen[f];
+        if (len == bucket.length) {
+            bucket = buckets[f] = Arrays.copyOf(bucket, len * 2);
+        }
+        bucket[len] = state;
+        bucket[len + 1] = pressed;
+        bucketLen[f] = len + 2;
+        if (f < lowest) {
+            lowest = f;
+        }
+        if (++open > peakOpen) {
+            peakOpen = open;
+        }
+    }
+
+    /**
+     * @return true iff the state was not closed already
+     */
+    private boolean close(long state) {
+        if (closedBits != null) {
+            int w = (int) (state >>> 6);
+            long bit = 1L << state;
+            if ((closedBits[w] & bit) != 0) {
+                return false;
+            }
+            closedBits[w] |= bit;
+            return true;
+        }
+        return closedSet.add(state);
+    }
+
+    private boolean isClosed(long state) {
+        if (closedBits != null) {
+            return (closedBits[(int) (state >>> 6)] & 1L << state) != 0;
+        }
+        return closedSet.contains(state);
+    }
+
+    private void reset() {
+        Arrays.fill(bucketLen, 0);
+        lowest = 0;
+        open = 0;
+        peakOpen = 0;
+        expanded = 0;
+        solution = 0;
+        if (closedBits != null) {
+            Arrays.fill(closedBits, 0);
+        } else {
+            closedSet.clear();
+        }
+    }
+}
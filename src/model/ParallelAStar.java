@@ -0,0 +1,301 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash distributed A* (HDA*) for boards of at most {@link Board#PACKED_LIMIT} tiles per side. Every node is owned
+ * by one worker, picked by a hash of its press set. Each worker keeps its own open list and sends the children it
+ * generates to their owners through lock-free queues, in batches of a few hundred nodes, so workers share no other
+ * structure.
+ * <p>
+ * As in {@link IdaStar} tiles are only pressed in increasing order, with the same cut for rows that can no longer
+ * change, so every press set is reached once and the search is a tree: the hash spreads the work evenly and no
+ * closed set is needed.
+ * <p>
+ * The search uses the admissible {@link PatternDatabase} estimate, so the first solution is not accepted blindly:
+ * workers keep expanding until every node with an f below the best solution so far has been expanded, which gives a
+ * shortest solution. The workers are done when a global count of batches in flight plus workers with nodes left
+ * drops to zero; it is only touched once per batch, never per node.
+ * <p>
+ * Workers run on a pool shared by every search. It grows to the most workers ever searching at once, since every
+ * worker of a search must run at the same time, and keeps idle threads for a minute.
+ */
+class ParallelAStar {
+    private static final int BATCH = 512; // longs per message, 2 per node
+    private static final int FLUSH_EVERY = 64;
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "hda");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final int size;
+    private final int cells;
+    private final long[] masks;
+    private final PatternDatabase pdb;
+    private final int threads;
+
+    private Worker[] workers;
+    /**
+     * Nodes in inboxes plus workers that still hold nodes.
+     */
+    private final AtomicLong active = new AtomicLong();
+    private volatile boolean stopped;
+    private final AtomicInteger bestCost = new AtomicInteger();
+    private volatile long bestPressed;
+    private long expanded;
+    private long peakOpen;
+
+    /**
+     * @param size the side length of the boards to search
+     * @param threads the number of workers
+     */
+    ParallelAStar(int size, int threads) {
+        this.size = size;
+        cells = size * size;
+        masks = Board.toggleMasks(size);
+        pdb = PatternDatabase.forSize(size);
+        this.threads = threads;
+    }
+
+    /**
+     * Searches for a shortest way to turn a board off. The board must be solvable or every reachable board is searched.
+     * @param start the lights
+     * @return true iff a solution was found, see {@link #solution()}
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    boolean search(long start) throws InterruptedException {
+        workers = new Worker[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Worker();
+        }
+        stopped = false;
+        bestCost.set(Integer.MAX_VALUE);
+        Worker first = workers[owner(0L)];
+        first.busy = true;
+        active.set(1);
+        first.accept(start, 0L);
+
+        Future<?>[] running = new Future<?>[threads];
+        for (int w = 0; w < threads; w++) {
+            running[w] = POOL.submit(workers[w]);
+        }
+        try {
+            for (Future<?> f : running) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("A search worker failed", e.getCause());
+        } finally {
+            stopped = true; // if we were interrupted, or a worker failed
+        }
+        expanded = 0;
+        peakOpen = 0;
+        for (Worker w : workers) {
+            expanded += w.expanded;
+            peakOpen += w.peakOpen;
+        }
+        workers = null;
+        return bestCost.get() != Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the tiles to press, bit y*size+x, after a successful search
+     */
+    long solution() {
+        return bestPressed;
+    }
+
+    /**
+     * @return nodes expanded by the last search, over every worker
+     */
+    long expanded() {
+        return expanded;
+    }
+
+    /**
+     * @return the sum over workers of the most nodes each open list held at once in the last search
+     */
+    long peakOpen() {
+        return peakOpen;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    private int owner(long pressed) {
+        long h = pressed * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 32) * threads >>> 32);
+    }
+
+    private synchronized void offerSolution(long pressed) {
+        int cost = Long.bitCount(pressed);
+        if (cost < bestCost.get()) {
+            bestPressed = pressed;
+            bestCost.set(cost);
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final ConcurrentLinkedQueue<long[]> inbox = new ConcurrentLinkedQueue<>();
+        private final long[][] outgoing = new long[threads][];
+        private final int[] outgoingLen = new int[threads];
+
+        private final long[][] buckets = new long[2 * cells + 2][];
+        private final int[] bucketLen = new int[buckets.length];
+        private int lowest;
+        private int open;
+        private boolean busy;
+
+        private long expanded;
+        private int peakOpen;
+
+        Worker() {
+            for (int f = 0; f < buckets.length; f++) {
+                buckets[f] = new long[16];
+            }
+        }
+
+        @Override
+        public void run() {
+            int sinceFlush = 0;
+            while (!stopped) {
+                drainInbox();
+                if (open == 0) {
+                    flushAll();
+                    if (busy) {
+                        busy = false;
+                        active.decrementAndGet();
+                    }
+                    if (active.get() == 0) {
+                        return;
+                    }
+                    LockSupport.parkNanos(1_000);
+                    continue;
+                }
+                expandNext();
+                if (++sinceFlush == FLUSH_EVERY) {
+                    sinceFlush = 0;
+                    flushAll();
+                }
+            }
+        }
+
+        private void drainInbox() {
+            long[] batch;
+            while ((batch = inbox.poll()) != null) {
+                if (!busy) {
+                    busy = true; // before the batch stops counting, so the count can't touch zero in between
+                    active.incrementAndGet();
+                }
+                int i = 0;
+                for (; i < batch.length && (batch[i] != 0 || batch[i + 1] != 0); i += 2) {
+                    accept(batch[i], batch[i + 1]);
+                }
+                active.addAndGet(-i / 2);
+            }
+        }
+
+        /**
+         * Adds a node this worker owns to its open list unless it can't beat the best solution. Also called for the
+         * start board before the workers run.
+         */
+        private void accept(long state, long pressed) {
+            int f = Long.bitCount(pressed) + pdb.estimate(state);
+            if (f < bestCost.get()) {
+                push(state, pressed, f);
+            }
+        }
+
+        private void expandNext() {
+            while (bucketLen[lowest] == 0) {
+                lowest++;
+            }
+            int len = bucketLen[lowest] -= 2;
+            open--;
+            long state = buckets[lowest][len];
+            long pressed = buckets[lowest][len + 1];
+            if (lowest >= bestCost.get()) {
+                return; // a solution at least as short turned up since it was queued
+            }
+            if (state == 0) {
+                offerSolution(pressed);
+                return;
+            }
+            expanded++;
+            for (int i = 64 - Long.numberOfLeadingZeros(pressed); i < cells; i++) {
+                int frozen = i / size - 1; // rows above this can't be changed by tile i or later
+                if (frozen > 0 && (state & ((1L << (frozen * size)) - 1)) != 0) {
+                    break;
+                }
+                long child = state ^ masks[i];
+                long childPressed = pressed | 1L << i;
+                int to = owner(childPressed);
+                if (workers[to] == this) {
+                    accept(child, childPressed);
+                } else {
+                    send(to, child, childPressed);
+                }
+            }
+        }
+
+        private void send(int to, long state, long pressed) {
+            long[] batch = outgoing[to];
+            if (batch == null) {
+                batch = outgoing[to] = new long[BATCH];
+            }
+            int len = outgoingLen[to];
+            batch[len] = state;
+            batch[len + 1] = pressed;
+            outgoingLen[to] = len + 2;
+            if (len + 2 == BATCH) {
+                flush(to);
+            }
+        }
+
+        private void flushAll() {
+            for (int to = 0; to < threads; to++) {
+                if (outgoingLen[to] > 0) {
+                    flush(to);
+                }
+            }
+        }
+
+        private void flush(int to) {
+            int len = outgoingLen[to];
+            active.addAndGet(len / 2);
+            workers[to].inbox.add(outgoing[to]); // the unused (0, 0) tail ends a short batch, no message is both
+            outgoing[to] = null;
+            outgoingLen[to] = 0;
+        }
+
+        private void push(long state, long pressed, int f) {
+            long[] bucket = buckets[f];
+            int len = bucketLen[f];
+            if (len == bucket.length) {
+                bucket = buckets[f] = Arrays.copyOf(bucket, len * 2);
+            }
+            bucket[len] = state;
+            bucket[len + 1] = pressed;
+            bucketLen[f] = len + 2;
+            if (f < lowest) {
+                lowest = f;
+            }
+            if (++open > peakOpen) {
+                peakOpen = open;
+            }
+        }
+    }
+}
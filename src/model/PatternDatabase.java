@@ -0,0 +1,141 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An admissible estimate of the presses left on a board of at most {@link Board#PACKED_LIMIT} tiles per side, built
+ * from precomputed tables of exact minimal press counts for one or two row bands.
+ * <p>
+ * A band of rows a..b can only be changed by presses in rows a-1..b+1, so two bands with at least two rows between
+ * them never share a press and their table values can be added. Several such layouts of bands are summed and the
+ * largest sum is used; it never overestimates, unlike the lit tile count.
+ */
+class PatternDatabase {
+    private static final Map<Integer, PatternDatabase> CACHE = new ConcurrentHashMap<>();
+
+    private final int size;
+    /**
+     * Each layout is a list of {first row, height} pairs.
+     */
+    private final int[][] layouts;
+    /**
+     * Minimal presses per band pattern, indexed by [height - 1][has row above][has row below].
+     */
+    private final byte[][][][] tables = new byte[2][2][2][];
+
+    private PatternDatabase(int size) {
+        FlightEvents.Phase event = new FlightEvents.Phase();
+        event.begin();
+        this.size = size;
+        List<int[]> all = new ArrayList<>();
+        for (int offset = 0; offset < 4 && offset < size; offset++) {
+            List<Integer> bands = new ArrayList<>();
+            if (offset == 3) {
+                bands.add(0);
+                bands.add(1);
+            }
+            int r = offset;
+            while (r < size) {
+                int height = r + 1 < size ? 2 : 1;
+                bands.add(r);
+                bands.add(height);
+                r += height + 2;
+            }
+            int[] layout = new int[bands.size()];
+            for (int i = 0; i < layout.length; i++) {
+                layout[i] = bands.get(i);
+                if (i % 2 == 1) {
+                    table(layout[i - 1], layout[i]); // build eagerly, estimates must not allocate
+                }
+            }
+            all.add(layout);
+        }
+        layouts = all.toArray(new int[0][]);
+        FlightEvents.phase(event, "pattern database", size);
+    }
+
+    static PatternDatabase forSize(int size) {
+        if (size > Board.PACKED_LIMIT) {
+            throw new IllegalArgumentException("Pattern databases support boards up to " + Board.PACKED_LIMIT + "x" + Board.PACKED_LIMIT);
+        }
+        PatternDatabase cached = CACHE.get(size);
+        SolverMetrics.recordCacheLookup(cached != null);
+        return cached != null ? cached : CACHE.computeIfAbsent(size, PatternDatabase::new);
+    }
+
+    /**
+     * @param bits the lights, tile (x,y) is bit y*size+x
+     * @return a lower bound on the number of presses that turn the board off
+     */
+    int estimate(long bits) {
+        int best = (Long.bitCount(bits) + 4) / 5; // one press turns off at most five lights
+        long rowMask = (1L << size) - 1;
+        for (int[] layout : layouts) {
+            int sum = 0;
+            for (int i = 0; i < layout.length; i += 2) {
+                int first = layout[i];
+                int height = layout[i + 1];
+                long band = bits >>> (first * size) & (height == 2 ? rowMask << size | rowMask : rowMask);
+                sum += table(first, height)[(int) band];
+            }
+            if (sum > best) {
+                best = sum;
+            }
+        }
+        return best;
+    }
+
+    private byte[] table(int first, int height) {
+        int above = first > 0 ? 1 : 0;
+        int below = first + height < size ? 1 : 0;
+        byte[] t = tables[height - 1][above][below];
+        if (t == null) {
+            t = tables[height - 1][above][below] = build(height, above == 1, below == 1);
+        }
+        return t;
+    }
+
+    /**
+     * Breadth first search from a dark band over every press that can reach it.
+     */
+    private byte[] build(int height, boolean above, boolean below) {
+        int bits = height * size;
+        int rowMask = (1 << size) - 1;
+        List<Integer> moves = new ArrayList<>();
+        for (int pr = above ? -1 : 0; pr <= (below ? height : height - 1); pr++) {
+            for (int x = 0; x < size; x++) {
+                int effect = 0;
+                for (int rr = 0; rr < height; rr++) {
+                    if (pr == rr) {
+                        effect |= ((0b111 << x >>> 1) & rowMask) << (rr * size);
+                    } else if (Math.abs(pr - rr) == 1) {
+                        effect |= 1 << (x + rr * size);
+                    }
+                }
+                moves.add(effect);
+            }
+        }
+        byte[] dist = new byte[1 << bits];
+        Arrays.fill(dist, (byte) -1);
+        int[] queue = new int[1 << bits];
+        int head = 0;
+        int tail = 0;
+        dist[0] = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int p = queue[head++];
+            for (int m : moves) {
+                int q = p ^ m;
+                if (dist[q] < 0) {
+                    dist[q] = (byte) (dist[p] + 1);
+                    queue[tail++] = q;
+                }
+            }
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,51 @@
+package model;
+
+/**
+ * The presses that turn a board completely dark, or the explicit answer that no such presses exist.
+ * Presses are stored as a {@link Board} whose lit tiles are the tiles to press; order never matters in Lights Out.
+ */
+final class Solution {
+    /**
+     * The result for a board that cannot be turned off.
+     */
+    static final Solution UNSOLVABLE = new Solution(null);
+
+    private final Board presses;
+
+    Solution(Board presses) {
+        this.presses = presses;
+    }
+
+    /**
+     * @return true iff the board this solution was computed for can be turned off
+     */
+    boolean isSolvable() {
+        return presses != null;
+    }
+
+    /**
+     * @return the tiles to press as lit tiles of a board, null if unsolvable
+     */
+    Board getPresses() {
+        return presses;
+    }
+
+    /**
+     * @return the number of presses needed, -1 if unsolvable
+     */
+    int length() {
+        return presses == null ? -1 : presses.countOn();
+    }
+
+    /**
+     * @return y*size+x of a press to make next, -1 if unsolvable or nothing is left to press
+     */
+    int nextPress() {
+        return presses == null ? -1 : presses.firstOn();
+    }
+
+    @Override
+    public String toString() {
+        return isSolvable() ? "Solution{presses=" + length() + "}" : "Solution{unsolvable}";
+    }
+}
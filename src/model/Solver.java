@@ -2,6 +2,7 @@ package model;
 
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 /**
  * Used to provide hints. Go away.
@@ -69,36 +70,6 @@ abstract class SearchNode implements Comparable<SearchNode>{
         return h;
     }
 
-    int contigH(){
-        Queue<Tile> toSearch = new LinkedList<>();
-        for(Tile t : state){
-            toSearch.add(t);
-        }
-        int ret = 0;
-        while (!toSearch.isEmpty()){
-            Tile islandSeet = toSearch.poll();
-            if (!islandSeet.isOn()){
-                continue;
-            }
-
-            Queue<Tile> frontier = new LinkedList<>();
-            frontier.add(islandSeet);
-            Set<Tile> v = new HashSet<>();
-            while(!frontier.isEmpty()){
-                Tile curr = frontier.poll();
-                v.add(curr);
-                for( Tile n : curr.getNeighbors()){
-                    if(n.isOn() && !v.contains(n))
-                        frontier.add(n);
-                }
-            }
-            ret +=Math.ceil(v.size()/4.0);
-            toSearch.removeAll(v);
-        }
-
-        return  ret;
-    }
-
     @Override
     public boolean equals(Object o) {
 
@@ -184,8 +155,8 @@ class LOSearchNode extends SearchNode{
 
     Set<SearchNode> getNeighbors() {
         Set<SearchNode> ret = new HashSet<>();
-        for (int x = 0; x < Board.BOARD_SIZE; x++) {
-            for (int y = 0; y < Board.BOARD_SIZE; y++) {
+        for (int x = 0; x < state.getSize(); x++) {
+            for (int y = 0; y < state.getSize(); y++) {
                 Pair move = new Pair(x,y);
                 if (usedMoves.contains(move)) {
 
@@ -210,46 +181,246 @@ class LOSearchNode extends SearchNode{
  class Solver {
 
      static void printBoard(Board b){
-        printBoard( b, System.out);
-        }
-        public static void printBoard(Board b, PrintStream ps){
+       printBoard( b, System.out);
+       }
+
+    /**
+     * Prints a board with column and row numbers, composed into one buffer and written at once.
+     */
+       public static void printBoard(Board b, PrintStream ps){
         char ONSYMBOL = '●';
         char OFFSYMBOL = '○';
-            //formatting for text ui is soooo elegant
-            //System.out.print("\033[0;4m"); //turn on underline
-            ps.print("  ");
-            for(int c =0; c<Board.BOARD_SIZE; c++){
-                ps.print(c+" ");
+        int size = b.getSize();
+        long[] row = new long[(size + 63) >>> 6];
+        StringBuilder sb = new StringBuilder("  ");
+        for (int c = 0; c < size; c++) {
+            sb.append(c).append(' ');
+        }
+        for (int y = 0; y < size; y++) {
+            b.getRow(y, row);
+            sb.append('\n').append(y).append(' ');
+            for (int x = 0; x < size; x++) {
+                sb.append((row[x >>> 6] >>> x & 1L) != 0 ? ONSYMBOL : OFFSYMBOL).append(' ');
             }
-            int currentRow = -1;
-
+        }
+        ps.append(sb.append("\n\n"));
+        ps.flush();
+    }
 
-            for(Tile t : b){
-                if (currentRow!=t.getY()){ //newline for new rows.
-                    currentRow=t.getY();
-                    ps.printf("%n%d ",currentRow);
+    /**
+     * Solves a board with the given strategy.
+     * @param b the board to turn off; it is not modified
+     * @param mode which solver to use
+     * @return the presses that turn b off, or {@link Solution#UNSOLVABLE}
+     * @throws CancellationException if the thread was interrupted during a search
+     */
+    static Solution solve(Board b, SolverMode mode) {
+        FlightEvents.Solve event = new FlightEvents.Solve();
+        event.begin();
+        Solution s = solveWith(b, mode);
+        if (event.shouldCommit()) {
+            event.size = b.getSize();
+            event.mode = mode.name();
+            event.presses = s.length();
+            event.commit();
+        }
+        return s;
+    }
 
+    private static Solution solveWith(Board b, SolverMode mode) {
+        switch (mode) {
+            case ASTAR:
+                if (!ChaseSolver.forSize(b.getSize()).isSolvable(b)) {
+                    return Solution.UNSOLVABLE; // A* would search every reachable board first
+                }
+                if (b.getSize() <= Board.PACKED_LIMIT) {
+                    return packedAStar(b);
+                }
+                return aStarSolution(b);
+            case LINEAR:
+                return LinearSolver.forSize(b.getSize()).solve(b);
+            case CHASE:
+                return ChaseSolver.forSize(b.getSize()).solve(b);
+            case OPTIMAL:
+                if (b.getSize() > OPTIMAL_LIMIT) {
+                    return solve(b, SolverMode.AUTO);
+                }
+                if (!ChaseSolver.forSize(b.getSize()).isSolvable(b)) {
+                    return Solution.UNSOLVABLE;
                 }
-                char symbol = OFFSYMBOL;
-                if (t.isOn()) {
-                    symbol= ONSYMBOL;
+                return idaStar(b);
+            case PARALLEL:
+                if (b.getSize() > Board.PACKED_LIMIT) {
+                    return solve(b, SolverMode.AUTO);
                 }
-                ps.print(symbol+" ");
+                if (!ChaseSolver.forSize(b.getSize()).isSolvable(b)) {
+                    return Solution.UNSOLVABLE;
+                }
+                return parallelAStar(b, Runtime.getRuntime().availableProcessors());
+            case TABLE:
+                DistanceTable table = DistanceTable.shared(b.getSize());
+                if (table != null) {
+                    return table.solve(b);
+                }
+                return solve(b, SolverMode.AUTO);
+            case AUTO:
+            default:
+                if (b.getSize() <= Board.PACKED_LIMIT) {
+                    return LinearSolver.forSize(b.getSize()).solve(b);
+                }
+                return ChaseSolver.forSize(b.getSize()).solve(b);
+        }
+    }
 
+    /**
+     * Tells whether {@link #solve(Board, SolverMode)} gives a shortest solution on boards of a size, following the
+     * same fallbacks.
+     * @return true iff every solution of the mode for the size is a shortest one
+     */
+    static boolean minimizes(SolverMode mode, int size) {
+        switch (mode) {
+            case LINEAR:
+                return size <= LinearSolver.MAX_SIZE
+                        && ChaseSolver.forSize(size).nullity() <= LinearSolver.MAX_MINIMIZE_NULLITY;
+            case OPTIMAL:
+                return size <= OPTIMAL_LIMIT || minimizes(SolverMode.AUTO, size);
+            case PARALLEL:
+                return size <= Board.PACKED_LIMIT || minimizes(SolverMode.AUTO, size);
+            case TABLE:
+                return DistanceTable.shared(size) != null || minimizes(SolverMode.AUTO, size);
+            case AUTO:
+                return size <= Board.PACKED_LIMIT && minimizes(SolverMode.LINEAR, size);
+            case CHASE:
+            case ASTAR:
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Runs the allocation free A* with the lit tile heuristic of {@link LOSearchNode}, reusing one engine per thread
+     * and board size.
+     */
+    static Solution packedAStar(Board b) {
+        PackedAStar[] engines = PACKED_SEARCH.get();
+        PackedAStar engine = engines[b.getSize()];
+        if (engine == null) {
+            engine = engines[b.getSize()] = new PackedAStar(b.getSize(), PackedAStar::litTiles);
+        }
+        FlightEvents.Phase event = new FlightEvents.Phase();
+        event.begin();
+        boolean found = engine.search(b.getBits(), Long.MAX_VALUE);
+        FlightEvents.phase(event, "packed A*", b.getSize(), engine.expanded(), engine.peakOpen());
+        if (SolverMetrics.isEnabled()) {
+            SolverMetrics.global().recordSearch(engine.expanded(), engine.peakOpen());
+        }
+        if (!found) {
+            return notFound();
+        }
+        return new Solution(Board.fromVector(b.getSize(), new long[]{engine.solution()}));
+    }
+
+    /**
+     * Runs IDA* with the pattern database estimate, reusing one engine per thread and board size.
+     */
+    static Solution idaStar(Board b) {
+        IdaStar[] engines = IDA_SEARCH.get();
+        IdaStar engine = engines[b.getSize()];
+        if (engine == null) {
+            engine = engines[b.getSize()] = new IdaStar(b.getSize());
+        }
+        FlightEvents.Phase event = new FlightEvents.Phase();
+        event.begin();
+        boolean found = engine.search(b.getBits(), Long.MAX_VALUE);
+        FlightEvents.phase(event, "IDA*", b.getSize(), engine.expanded(), 0);
+        if (SolverMetrics.isEnabled()) {
+            SolverMetrics.global().recordSearch(engine.expanded(), 0); // no open list, only the recursion
+        }
+        if (!found) {
+            return notFound();
+        }
+        return new Solution(Board.fromVector(b.getSize(), new long[]{engine.solution()}));
+    }
+
+    /**
+     * Runs hash distributed A* with the pattern database estimate on the given number of worker threads.
+     */
+    static Solution parallelAStar(Board b, int threads) {
+        ParallelAStar engine = new ParallelAStar(b.getSize(), threads);
+        FlightEvents.Phase event = new FlightEvents.Phase();
+        event.begin();
+        try {
+            boolean found = engine.search(b.getBits());
+            FlightEvents.phase(event, "parallel A*", b.getSize(), engine.expanded(), engine.peakOpen());
+            if (SolverMetrics.isEnabled()) {
+                SolverMetrics.global().recordSearch(engine.expanded(), engine.peakOpen());
+            }
+            if (!found) {
+                return notFound();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("The search was interrupted");
+        }
+        return new Solution(Board.fromVector(b.getSize(), new long[]{engine.solution()}));
+    }
 
-            ps.println();
-            ps.println();
+    /**
+     * The result of a search that found nothing: the searches are only run on boards that can be turned off, so one
+     * that ends empty handed was interrupted, unless it really ran out of boards.
+     * @throws CancellationException if the thread was interrupted
+     */
+    private static Solution notFound() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("The search was interrupted");
+        }
+        return Solution.UNSOLVABLE;
+    }
+
+    /**
+     * The largest side length {@link SolverMode#OPTIMAL} searches. IDA* answers 7x7 boards in seconds but may run for a
+     * very long time on 8x8, so larger boards use {@link SolverMode#AUTO}.
+     */
+    static final int OPTIMAL_LIMIT = 7;
+
+    private static final ThreadLocal<IdaStar[]> IDA_SEARCH =
+            ThreadLocal.withInitial(() -> new IdaStar[Board.PACKED_LIMIT + 1]);
+
+    private static final ThreadLocal<PackedAStar[]> PACKED_SEARCH =
+            ThreadLocal.withInitial(() -> new PackedAStar[Board.PACKED_LIMIT + 1]);
+
+    /**
+     * Runs {@link #aStar(SearchNode, Board)} and collects the moves on the path it finds. This is the original object
+     * based search, kept as a reference for {@link #packedAStar(Board)}.
+     */
+    static Solution aStarSolution(Board b) {
+        List<SearchNode> path = aStar(new LOSearchNode(new Board(b)), new Board(b.getSize()));
+        if (path == null) {
+            return notFound();
+        }
+        Board presses = new Board(b.getSize());
+        for (SearchNode n : path) {
+            if (n.source != null) {
+                presses.flip(n.source.x, n.source.y);
+            }
         }
+        return new Solution(presses);
+    }
+
     static List<SearchNode> aStar(SearchNode start, Board goal) {
         PriorityQueue<SearchNode> pq = new PriorityQueue();
         Set<Board> visited = new HashSet<>();
         Map<Board, SearchNode> frontierMap = new HashMap<>();
         pq.add(start);
 
-        int i = 0;
+        int peak = 1;
+        FlightEvents.Phase event = new FlightEvents.Phase();
+        event.begin();
 
         while (!pq.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null; // the hint was cancelled
+            }
 
             SearchNode curr = pq.poll();
             if (curr.state.equals(goal)) {
@@ -266,7 +437,10 @@ class LOSearchNode extends SearchNode{
                         break;
                     }
                 }
-
+                FlightEvents.phase(event, "reference A*", goal.getSize(), visited.size(), peak);
+                if (SolverMetrics.isEnabled()) {
+                    SolverMetrics.global().recordSearch(visited.size(), peak);
+                }
 
                 return path;
             }
@@ -283,7 +457,6 @@ class LOSearchNode extends SearchNode{
                 }
                 if (frontierMap.containsKey(n)) {
                     if (frontierMap.get(n).g <= n.g) {
-                        System.out.println("Skipping");
                         continue; // n isn't better
                     }
                 }
@@ -294,8 +467,13 @@ class LOSearchNode extends SearchNode{
 
 
             }
+            peak = Math.max(peak, pq.size());
 
         }
+        FlightEvents.phase(event, "reference A*", goal.getSize(), visited.size(), peak);
+        if (SolverMetrics.isEnabled()) {
+            SolverMetrics.global().recordSearch(visited.size(), peak);
+        }
        // System.out.println("No Solution");
         printBoard(start.state);
         return null;
@@ -323,7 +501,7 @@ class LOSearchNode extends SearchNode{
             List<SearchNode> hPath =new LinkedList<>();
             try {
                 long start = System.currentTimeMillis();
-            List<SearchNode> sPath = aStar(new LOSearchNode(new Board(model.board)), new Board());
+            List<SearchNode> sPath = aStar(new LOSearchNode(new Board(model.board)), new Board(model.getDimension()));
                 long end = System.currentTimeMillis();
 
                 System.out.println("Time: "+ (end-start)/1000.0+" Steps:"+ sPath.size());
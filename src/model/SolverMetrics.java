@@ -0,0 +1,240 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for what solving costs, shared by every model and solver in the process: hint latency and the bytes a
+ * hint allocates, nodes expanded and the largest open list of the searches, how often the per-size solver caches
+ * already held what was asked for, and how the shared {@link HintCache} fares.
+ * <p>
+ * Recording is off unless the system property lightsout.metrics is true or {@link #setEnabled(boolean)} turns it on;
+ * while off the only cost is one volatile read per solve. Bytes are those allocated by the thread asking for the
+ * hint, so the worker threads of {@link SolverMode#PARALLEL} are not included.
+ */
+public final class SolverMetrics {
+    private static final SolverMetrics GLOBAL = new SolverMetrics();
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private static volatile boolean enabled;
+
+    static {
+        setEnabled(Boolean.getBoolean("lightsout.metrics"));
+    }
+
+    private final LatencyHistogram hintLatency = new LatencyHistogram();
+    private final LongAdder hintBytes = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodesExpanded = new LongAdder();
+    private final LongAccumulator peakOpen = new LongAccumulator(Math::max, 0);
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder hintCacheHits = new LongAdder();
+    private final LongAdder hintCacheMisses = new LongAdder();
+    private final LongAdder hintCacheEvictions = new LongAdder();
+    private final LongAdder hintCacheRejections = new LongAdder();
+
+    private SolverMetrics() {
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                if (t.isThreadAllocatedMemorySupported()) {
+                    return t;
+                }
+            }
+        } catch (UnsupportedOperationException e) {
+            // no allocation counts on this JVM
+        }
+        return null;
+    }
+
+    /**
+     * @return the metrics of this process
+     */
+    public static SolverMetrics global() {
+        return GLOBAL;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off. What was recorded is kept either way. Turning it on also turns on the JVM's
+     * allocation accounting, which stays on.
+     */
+    public static void setEnabled(boolean on) {
+        if (on && THREADS != null) {
+            try {
+                THREADS.setThreadAllocatedMemoryEnabled(true);
+            } catch (SecurityException e) {
+                // bytes per hint stay 0
+            }
+        }
+        enabled = on;
+    }
+
+    /**
+     * @return bytes the current thread has allocated so far, 0 if the JVM can't tell
+     */
+    static long allocatedBytes() {
+        return THREADS == null ? 0 : Math.max(0, THREADS.getCurrentThreadAllocatedBytes());
+    }
+
+    void recordHint(long nanos, long bytes) {
+        hintLatency.record(nanos);
+        hintBytes.add(bytes);
+    }
+
+    void recordSearch(long expanded, long peak) {
+        searches.increment();
+        nodesExpanded.add(expanded);
+        peakOpen.accumulate(peak);
+    }
+
+    /**
+     * Counts a lookup in a per-size cache, if recording is on.
+     */
+    static void recordCacheLookup(boolean hit) {
+        if (enabled) {
+            (hit ? GLOBAL.cacheHits : GLOBAL.cacheMisses).increment();
+        }
+    }
+
+    /**
+     * Counts a lookup in the hint cache, if recording is on.
+     */
+    static void recordHintCacheLookup(boolean hit) {
+        if (enabled) {
+            (hit ? GLOBAL.hintCacheHits : GLOBAL.hintCacheMisses).increment();
+        }
+    }
+
+    static void recordHintCacheEviction() {
+        if (enabled) {
+            GLOBAL.hintCacheEvictions.increment();
+        }
+    }
+
+    static void recordHintCacheRejection() {
+        if (enabled) {
+            GLOBAL.hintCacheRejections.increment();
+        }
+    }
+
+    public long getHintCount() {
+        return hintLatency.count();
+    }
+
+    /**
+     * @param p a percentile between 0 and 100
+     * @return an upper bound of that percentile of hint latency in nanoseconds, 0 if no hints were recorded
+     */
+    public long getHintLatencyPercentile(double p) {
+        return hintLatency.percentile(p);
+    }
+
+    /**
+     * @return the mean hint latency in nanoseconds
+     */
+    public double getMeanHintLatency() {
+        return hintLatency.mean();
+    }
+
+    /**
+     * @return the mean bytes allocated per hint, 0 if the JVM can't tell
+     */
+    public double getMeanBytesPerHint() {
+        long n = getHintCount();
+        return n == 0 ? 0 : (double) hintBytes.sum() / n;
+    }
+
+    /**
+     * @return how many A*, IDA* and parallel searches ran
+     */
+    public long getSearchCount() {
+        return searches.sum();
+    }
+
+    public long getNodesExpanded() {
+        return nodesExpanded.sum();
+    }
+
+    /**
+     * @return the largest open list any single search held
+     */
+    public long getPeakOpen() {
+        return peakOpen.get();
+    }
+
+    /**
+     * @return the fraction of per-size solver lookups that found the solver already built, 0 if there were none
+     */
+    public double getCacheHitRate() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the fraction of hints whose board, or a rotation or mirror image of it, was already in the hint cache,
+     * 0 if there were none
+     */
+    public double getHintCacheHitRate() {
+        long hits = hintCacheHits.sum();
+        long total = hits + hintCacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return how many boards the hint cache dropped to make room for more popular ones
+     */
+    public long getHintCacheEvictions() {
+        return hintCacheEvictions.sum();
+    }
+
+    /**
+     * @return how many solved boards the hint cache turned away as less popular than what it holds
+     */
+    public long getHintCacheRejections() {
+        return hintCacheRejections.sum();
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        hintLatency.reset();
+        hintBytes.reset();
+        searches.reset();
+        nodesExpanded.reset();
+        peakOpen.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        hintCacheHits.reset();
+        hintCacheMisses.reset();
+        hintCacheEvictions.reset();
+        hintCacheRejections.reset();
+    }
+
+    /**
+     * @return a few lines for people to read
+     */
+    @Override
+    public String toString() {
+        return String.format("Hints: %d, latency us: mean %.1f, p50 %d, p90 %d, p99 %d, max %d%n"
+                        + "Bytes allocated per hint: %.0f%n"
+                        + "Searches: %d, nodes expanded: %d, peak open list: %d%n"
+                        + "Solver cache hit rate: %.1f%%%n"
+                        + "Hint cache hit rate: %.1f%%, evictions: %d, rejected: %d%s",
+                getHintCount(), getMeanHintLatency() / 1000, getHintLatencyPercentile(50) / 1000,
+                getHintLatencyPercentile(90) / 1000, getHintLatencyPercentile(99) / 1000,
+                hintLatency.max() / 1000, getMeanBytesPerHint(),
+                getSearchCount(), getNodesExpanded(), getPeakOpen(),
+                100 * getCacheHitRate(), 100 * getHintCacheHitRate(), getHintCacheEvictions(),
+                getHintCacheRejections(), enabled ? "" : String.format("%n(recording is off)"));
+    }
+}
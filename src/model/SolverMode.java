@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * The strategies {@link LightsOutModel#getHint()} can use to solve a board.
+ */
+public enum SolverMode {
+    /**
+     * Uses {@link #LINEAR} on small boards and {@link #CHASE} on larger ones. This is the default.
+     */
+    AUTO,
+    /**
+     * Solves the board as a linear system over GF(2) using a cached elimination of the toggle matrix.
+     * Fast, always correct, including reporting unsolvable boards. Gives a shortest solution on every size with at
+     * most {@link LinearSolver#MAX_MINIMIZE_NULLITY} quiet patterns, that is all but 19x19, 23x23, 30x30 and 32x32,
+     * where any solution may be returned. Only for boards up to 32x32, since the matrix has N^4 entries.
+     */
+    LINEAR,
+    /**
+     * Chases the lights down row by row and fixes the top row from a cached per-size lookup.
+     * Works on boards of any supported size, but the solution is not always the shortest.
+     */
+    CHASE,
+    /**
+     * Follows a precomputed table of optimal moves (see {@link DistanceTable}) in a memory mapped file, one read per
+     * press of the solution; later hints of the game reuse that solution. Falls back to {@link #AUTO} when no table for
+     * the board's size has been generated.
+     */
+    TABLE,
+    /**
+     * Iterative deepening A* with an admissible pattern database estimate, so hints are always on a shortest
+     * solution, in constant memory. Meant for boards from 5x5 to 7x7; larger boards, from 8x8 up, use {@link #AUTO}.
+     */
+    OPTIMAL,
+    /**
+     * Hash distributed A* (see {@link ParallelAStar}) with the same estimate as {@link #OPTIMAL}, spread over every
+     * core. Also gives a shortest solution; pays off on the hardest boards from 7x7 up. Boards over 8x8 use
+     * {@link #AUTO}.
+     */
+    PARALLEL,
+    /**
+     * A* search with the original lit tile heuristic. Kept as a reference; it is far slower than the other modes and
+     * its plans are not always the shortest. Boards up to 8x8 use an allocation free engine.
+     */
+    ASTAR
+}
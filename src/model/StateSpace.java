@@ -0,0 +1,287 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Enumerates every board of a small size that can be turned off, by breadth first search from the dark board over
+ * packed states, to get exact numbers: how many boards need each number of presses, which boards are hardest, and
+ * the quiet patterns (press sets that change nothing) of the size.
+ * <p>
+ * States are numbered densely as in {@link DistanceTable}, so the visited set is a bitset of 2^(size^2 - nullity)
+ * bits, 1 MB for 5x5. Each level of the search splits the frontier bitset into chunks expanded in parallel, and claims
+ * new states with a compare-and-set on the visited word. A random sample is checked against the shortest linear
+ * solution and the reference {@link Solver#aStar(SearchNode, Board)}.
+ * <pre>
+ * model.StateSpace [-size N] [-sample K] [-seed S] [-hardest OUT.lob]
+ * </pre>
+ */
+class StateSpace {
+    /**
+     * Frontier words per parallel task.
+     */
+    private static final int CHUNK_WORDS = 256;
+
+    private final int size;
+    private final DistanceTable.Index index;
+    private final long[] masks;
+    private final int states;
+    /**
+     * The number of presses each state needs, once found.
+     */
+    private final byte[] distance;
+    private final List<Long> levels = new ArrayList<>();
+    private long[] lastLevel;
+
+    /**
+     * @throws IllegalArgumentException if the size has too many solvable boards to enumerate
+     */
+    StateSpace(int size) {
+        if (size > Board.PACKED_LIMIT) {
+            throw new IllegalArgumentException("A " + size + "x" + size + " board does not fit in a long");
+        }
+        this.size = size;
+        this.index = new DistanceTable.Index(size);
+        this.masks = Board.toggleMasks(size);
+        this.states = index.entries();
+        this.distance = new byte[states];
+    }
+
+    /**
+     * Runs the search; afterwards every state has its distance.
+     */
+    void explore() {
+        int words = (states + 63) >>> 6;
+        AtomicLongArray visited = new AtomicLongArray(words);
+        long[] frontier = new long[words];
+        int start = index.encode(0);
+        visited.set(start >>> 6, 1L << start);
+        frontier[start >>> 6] = 1L << start;
+        levels.add(1L);
+        for (int level = 0; ; level++) {
+            long[] current = frontier;
+            AtomicLongArray next = new AtomicLongArray(words);
+            LongAdder found = new LongAdder();
+            byte d = (byte) (level + 1);
+            IntStream.range(0, (words + CHUNK_WORDS - 1) / CHUNK_WORDS).parallel().forEach(c -> {
+                long count = 0;
+                for (int w = c * CHUNK_WORDS; w < Math.min(words, (c + 1) * CHUNK_WORDS); w++) {
+                    for (long bits = current[w]; bits != 0; bits &= bits - 1) {
+                        long state = index.decode(w * 64 + Long.numberOfTrailingZeros(bits));
+                        for (long m : masks) {
+                            int j = index.encode(state ^ m);
+                            if (claim(visited, j)) {
+                                claim(next, j);
+                                distance[j] = d;
+                                count++;
+                            }
+                        }
+                    }
+                }
+                found.add(count);
+            });
+            if (found.sum() == 0) {
+                lastLevel = current;
+                return;
+            }
+            levels.add(found.sum());
+            frontier = new long[words];
+            for (int w = 0; w < words; w++) {
+                frontier[w] = next.get(w);
+            }
+        }
+    }
+
+    /**
+     * Sets bit j.
+     * @return true iff this call set it
+     */
+    private static boolean claim(AtomicLongArray bits, int j) {
+        int w = j >>> 6;
+        long bit = 1L << j;
+        long old;
+        do {
+            old = bits.get(w);
+            if ((old & bit) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(w, old, old | bit));
+        return true;
+    }
+
+    /**
+     * @return how many boards need each number of presses, indexed by presses
+     */
+    List<Long> histogram() {
+        return levels;
+    }
+
+    /**
+     * @return the boards that need the most presses
+     */
+    List<Board> hardest() {
+        List<Board> boards = new ArrayList<>();
+        for (int w = 0; w < lastLevel.length; w++) {
+            for (long bits = lastLevel[w]; bits != 0; bits &= bits - 1) {
+                boards.add(Board.fromVector(size, new long[]{index.decode(w * 64 + Long.numberOfTrailingZeros(bits))}));
+            }
+        }
+        return boards;
+    }
+
+    /**
+     * Compares the search with the linear solver's shortest solution and with the reference A* on random boards.
+     * Prints a summary.
+     * @return true iff the search agreed with both: the same length as the linear solver, and A* found a valid
+     * solution no shorter
+     */
+    boolean crossCheck(int sample, long seed) {
+        SplittableRandom rng = new SplittableRandom(seed);
+        LinearSolver linear = LinearSolver.forSize(size);
+        int agree = 0;
+        int aStarValid = 0;
+        int aStarShortest = 0;
+        int failures = 0;
+        for (int k = 0; k < sample; k++) {
+            int i = rng.nextInt(states);
+            Board b = Board.fromVector(size, new long[]{index.decode(i)});
+            int d = distance[i];
+            int shortest = Elimination.count(linear.shortestEquivalent(linear.solve(b).getPresses().toVector()));
+            Solution aStar = Solver.aStarSolution(b);
+            boolean valid = aStar.isSolvable() && solves(b, aStar.getPresses());
+            if (shortest == d) {
+                agree++;
+            }
+            if (valid) {
+                aStarValid++;
+            }
+            if (valid && aStar.length() == d) {
+                aStarShortest++;
+            }
+            if (shortest != d || !valid || aStar.length() < d) {
+                failures++;
+                System.out.printf("Mismatch: search %d, linear %d, A* %d (%s) for%n", d, shortest, aStar.length(),
+                        valid ? "valid" : "invalid");
+                Solver.printBoard(b, System.out);
+            }
+        }
+        System.out.printf("Cross-check of %d random boards: linear solver agreed on %d, A* found a solution for %d"
+                + " (shortest for %d), %d failures%n", sample, agree, aStarValid, aStarShortest, failures);
+        return failures == 0;
+    }
+
+    private boolean solves(Board b, Board presses) {
+        long bits = b.getBits();
+        long p = presses.getBits();
+        for (; p != 0; p &= p - 1) {
+            bits ^= masks[Long.numberOfTrailingZeros(p)];
+        }
+        return bits == 0;
+    }
+
+    private static String rows(long bits, int size) {
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < size; y++) {
+            if (y > 0) {
+                sb.append('/');
+            }
+            for (int x = 0; x < size; x++) {
+                sb.append((bits >>> (y * size + x) & 1L) != 0 ? '1' : '0');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Analyses one size and prints the results.
+     * @param args options, see the class comment
+     */
+    public static void main(String[] args) throws IOException {
+        int size = Board.DEFAULT_SIZE;
+        int sample = 20;
+        long seed = System.nanoTime();
+        Path hardestFile = null;
+        for (int a = 0; a < args.length; a++) {
+            switch (args[a]) {
+                case "-size":
+                    size = Integer.parseInt(args[++a]);
+                    break;
+                case "-sample":
+                    sample = Integer.parseInt(args[++a]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++a]);
+                    break;
+                case "-hardest":
+                    hardestFile = Paths.get(args[++a]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[a]);
+                    System.err.println("Usage: model.StateSpace [-size N] [-sample K] [-seed S] [-hardest OUT.lob]");
+                    System.exit(2);
+            }
+        }
+        StateSpace space;
+        try {
+            space = new StateSpace(size);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Too many " + size + "x" + size + " boards to enumerate: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        long[][] quiet = LinearSolver.forSize(size).quietPatterns();
+        int cells = size * size;
+        System.out.printf("%dx%d: %d boards, %d can be turned off (nullity %d)%n",
+                size, size, 1L << cells, (long) space.states, quiet.length);
+        System.out.println("Quiet patterns:");
+        for (long[] q : quiet) {
+            System.out.println("  " + rows(q[0], size));
+        }
+
+        long start = System.nanoTime();
+        space.explore();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<Long> histogram = space.histogram();
+        long total = 0;
+        long weighted = 0;
+        System.out.println("Presses\tBoards");
+        for (int d = 0; d < histogram.size(); d++) {
+            System.out.println(d + "\t" + histogram.get(d));
+            total += histogram.get(d);
+            weighted += d * histogram.get(d);
+        }
+        System.out.printf("Reached %d boards in %.3fs on %d threads; mean presses %.3f%n", total, seconds,
+                Runtime.getRuntime().availableProcessors(), (double) weighted / total);
+
+        List<Board> hardest = space.hardest();
+        System.out.printf("Hardest: %d presses, %d boards%n", histogram.size() - 1, hardest.size());
+        if (hardestFile != null) {
+            try (LobWriter w = new LobWriter(Files.newBufferedWriter(hardestFile))) {
+                for (Board b : hardest) {
+                    w.write(b);
+                }
+            }
+            System.out.println("  written to " + hardestFile);
+        } else {
+            for (Board b : hardest.subList(0, Math.min(5, hardest.size()))) {
+                System.out.println("  " + rows(b.getBits(), size));
+            }
+        }
+
+        boolean ok = space.crossCheck(sample, seed);
+        if (total != space.states || !ok) {
+            System.out.println("The search does not agree with the solvers");
+            System.exit(1);
+        }
+    }
+}
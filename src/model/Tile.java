@@ -6,18 +6,17 @@ import java.util.Set;
 
 /**
  * Represents an individual tile. You will only use the getters for x,y, and on. Everything else will be accessed through the model.
+ * A tile is a lightweight view of one cell of its board; it holds no light state of its own.
  */
 public class Tile {
     private final int x;
     private final int y;
     private final Board board;
-    private boolean on;
 
-    Tile(int x, int y, Board board, boolean on) {
+    Tile(int x, int y, Board board) {
         this.x = x;
         this.y = y;
         this.board = board;
-        this.on = on;
     }
 
     /**
@@ -25,12 +24,11 @@ public class Tile {
      * @return True iff the tile is on
      */
     public boolean isOn() {
-        return on;
+        return board.isOn(x, y);
     }
 
     void setOn(boolean on) {
-        // System.out.printf("Setting:%s to %b%n",this,on);
-        this.on = on;
+        board.setOn(x, y, on);
     }
 
     /**
@@ -50,10 +48,7 @@ public class Tile {
     }
 
     void toggle() {
-        on = !on;
-        for (Tile t : getNeighbors()) {
-            t.on = !t.on;
-        }
+        board.toggleTile(x, y);
     }
 
     Set<Tile> getNeighbors() {
@@ -61,28 +56,28 @@ public class Tile {
         //loops would be even messier
         if (x > 0)
             ret.add(board.getTile(x - 1, y));
-        if (x < Board.BOARD_SIZE - 1)
+        if (x < board.getSize() - 1)
             ret.add(board.getTile(x + 1, y));
         if (y > 0)
             ret.add(board.getTile(x, y - 1));
-        if (y < Board.BOARD_SIZE - 1)
+        if (y < board.getSize() - 1)
             ret.add(board.getTile(x, y + 1));
 
         return ret;
     }
 
-    //Equality/hash is based on x and y but not board
+    //Equality/hash is based on the board instance and x and y, not the light, which can change while the tile is in a set
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Tile tile = (Tile) o;
-        return x == tile.x && y == tile.y && on == tile.on;
+        return board == tile.board && x == tile.x && y == tile.y;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y, on);
+        return Objects.hash(x, y);
     }
 
     @Override
@@ -90,7 +85,7 @@ public class Tile {
         return "Tile{" +
                 "x=" + x +
                 ", y=" + y +
-                ", on=" + on +
+                ", on=" + isOn() +
                 '}';
     }
 
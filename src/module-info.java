@@ -6,5 +6,7 @@
  */
 module LightsOut {
     requires transitive javafx.controls;
+    requires jdk.management;
+    requires jdk.jfr;
     exports gui;
 }
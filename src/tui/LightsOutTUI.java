@@ -2,17 +2,29 @@ package tui;
 
 
 import model.LightsOutModel;
+import model.ModelEvent;
 import model.Observer;
-import model.Tile;
-
+import model.SolverMetrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.InputMismatchException;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * A text user interface for Lights Out
+ * <p>
+ * The model is only used on the main thread. A reader thread queues the lines typed, and hints found in the background
+ * are queued behind them, so the main thread announces each hint while waiting for the next line.
  */
-public class LightsOutTUI implements Observer<LightsOutModel, String> {
+public class LightsOutTUI implements Observer<LightsOutModel, ModelEvent> {
    private static char ONSYMBOL = 'o';
     private static char OFFSYMBOL = '.';
     /* Cool encodings. Fonzies only.
@@ -20,19 +32,140 @@ public class LightsOutTUI implements Observer<LightsOutModel, String> {
     private static char OFFSYMBOL = '○';
 
      */
+    /**
+     * Queued after the last line of input.
+     */
+    private static final Object END = new Object();
     private LightsOutModel model;
-    private Scanner in;
+    /**
+     * Lines typed, as Strings, and announcements from the model, as Runnables, in the order they came.
+     */
+    private final BlockingQueue<Object> inbox = new LinkedBlockingQueue<>();
+    /**
+     * The rest of the line being read word by word.
+     */
+    private Scanner tokens = new Scanner("");
     private boolean gameOn;
+    private final TextFrame frame;
 
 /**
  * The Text UI for Lights Out
  */
     public LightsOutTUI() {
-        model = new LightsOutModel();
+        this(new LightsOutModel());
+    }
+
+    /**
+     * The Text UI for Lights Out on an NxN board
+     * @param n the side length of the board
+     */
+    public LightsOutTUI(int n) {
+        this(new LightsOutModel(n));
+    }
+
+    /**
+     * The Text UI for Lights Out on an NxN board
+     * @param n the side length of the board
+     * @param ansiDiff redraw only the lights that changed using ANSI escapes, instead of printing a new board
+     */
+    public LightsOutTUI(int n, boolean ansiDiff) {
+        this(new LightsOutModel(n), ansiDiff);
+    }
+
+    private LightsOutTUI(LightsOutModel model) {
+        this(model, false);
+    }
+
+    private LightsOutTUI(LightsOutModel model, boolean ansiDiff) {
+        this.model = model;
+        if (ansiDiff) {
+            int[] screen = screenSize();
+            frame = new TextFrame(ONSYMBOL, OFFSYMBOL, true, screen[0], screen[1]);
+        } else {
+            frame = new TextFrame(ONSYMBOL, OFFSYMBOL, false);
+        }
         model.addObserver(this);
+        model.setNotifier(inbox::add);
         gameOn = false;
-        in = new Scanner( System.in );
+        Thread reader = new Thread(this::readInput, "input");
+        reader.setDaemon(true);
+        reader.start();
+
+    }
+
+    /**
+     * Finds the size of the terminal, from $COLUMNS and $LINES or else from stty, so diff mode is only used for boards
+     * that fit on it.
+     * @return the columns and lines, 80x24 if unknown
+     */
+    private static int[] screenSize() {
+        try {
+            return new int[]{Integer.parseInt(System.getenv("COLUMNS")), Integer.parseInt(System.getenv("LINES"))};
+        } catch (NumberFormatException e) {
+            // not exported by the shell, ask the terminal
+        }
+        try {
+            Process stty = new ProcessBuilder("stty", "size")
+                    .redirectInput(new File("/dev/tty"))
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            String[] size = new String(stty.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).trim().split("\\s+");
+            if (stty.waitFor() == 0 && size.length == 2) {
+                return new int[]{Integer.parseInt(size[1]), Integer.parseInt(size[0])};
+            }
+        } catch (IOException | NumberFormatException e) {
+            // no terminal to ask
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new int[]{80, 24};
+    }
+
+    private void readInput() {
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(System.in))) {
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                inbox.add(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            inbox.add(END);
+        }
+    }
+
+    /**
+     * Waits for the next line typed, announcing any hints found meanwhile.
+     * @throws NoSuchElementException if the input has ended
+     */
+    private String nextLine() {
+        while (true) {
+            Object next;
+            try {
+                next = inbox.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NoSuchElementException("Interrupted while waiting for input");
+            }
+            if (next == END) {
+                inbox.add(END);
+                throw new NoSuchElementException("No more input");
+            }
+            if (next instanceof Runnable) {
+                ((Runnable) next).run();
+            } else {
+                return (String) next;
+            }
+        }
+    }
 
+    /**
+     * @return the next word typed, possibly later on the same line as the last one
+     */
+    private String nextToken() {
+        while (!tokens.hasNext()) {
+            tokens = new Scanner(nextLine());
+        }
+        return tokens.next();
     }
 
     /**
@@ -44,7 +177,7 @@ public class LightsOutTUI implements Observer<LightsOutModel, String> {
 
         while(!ready){
             System.out.println("Enter a valid file name or type Q to go back.");
-            String command =  in.next();
+            String command = nextToken();
             if (command.equals("q") || command.equals("Q")) {
                 System.out.println("going back...");
                 return false;
@@ -65,7 +198,7 @@ public class LightsOutTUI implements Observer<LightsOutModel, String> {
         boolean ready = false;
         while(!ready){
             System.out.println("(R)andom Board. (L)oad a board. (Q)uit");
-            String command =  in.next(); // Using next allows you to string together load commands like l boards/1.lob.
+            String command = nextToken(); // Using words allows you to string together load commands like l boards/1.lob.
             switch (command){
                 case "R":
                 case "r":
@@ -80,7 +213,7 @@ public class LightsOutTUI implements Observer<LightsOutModel, String> {
                 case "q":
                     System.out.println("Exiting");
                     ready = true;
-                    in = new Scanner(System.in);//get rid of any remaining commands from the start menu
+                    tokens = new Scanner("");//get rid of any remaining commands from the start menu
                     return false;
 
                 default:
@@ -88,42 +221,15 @@ public class LightsOutTUI implements Observer<LightsOutModel, String> {
             }
             gameOn = true;
         }
-        in = new Scanner(System.in);//get rid of any remaining commands from the start menu
+        tokens = new Scanner("");//get rid of any remaining commands from the start menu
         return true;
     }
 
     /**
-     * iterates through the tiles and displays them
+     * Displays the board and the move count, composed into one buffer and printed at once
      */
     public void displayBoard(){
-        //formatting for text ui is soooo elegant
-        //System.out.print("\033[0;4m"); //turn on underline
-
-        //prints the column number
-        System.out.print("  ");
-        for(int c =0; c<model.getDimension(); c++){
-            System.out.print(c+" ");
-        }
-        //System.out.print("\033[0;0m"); //turn off underline
-        int currentRow = -1;
-
-        //prints the tiles
-        for(Tile t : model){
-            if (currentRow!=t.getY()){ //newline for new rows.
-                currentRow=t.getY();
-                System.out.printf("%n%d ",currentRow);
-
-            }
-            char symbol = OFFSYMBOL;
-            if (t.isOn()) {
-                symbol= ONSYMBOL;
-            }
-            System.out.print(symbol+" ");
-
-        }
-
-        System.out.printf("\nTotal Moves: %d\n",model.getMoves());
-      //  System.out.println();
+        frame.draw(model, "Total Moves: " + model.getMoves(), System.out);
     }
 
     /**
@@ -146,16 +252,24 @@ public class LightsOutTUI implements Observer<LightsOutModel, String> {
 
         while(gameOn) {
             msg = "";
-            System.out.println("Enter X Y to toggle a tile, (H)int, or (Q)uit to main menu");
-            String command = in.nextLine().strip();
+            System.out.println("Enter X Y to toggle a tile, (H)int, (S)tats, or (Q)uit to main menu");
+            String command = nextLine().strip();
             if (command.equals("q") || command.equals("Q")) {
                 System.out.println("Quitting to main menu.");
                 gameOn = false;
 
                 return;
 
+            } else if (command.equals("s") || command.equals("S")) {
+                if (SolverMetrics.isEnabled()) {
+                    System.out.println(model.getSolverMetrics());
+                } else {
+                    SolverMetrics.setEnabled(true); //off until asked for, so allocation accounting stays as the JVM had it
+                    System.out.println("Recording solver metrics from now on; (S)tats again shows them.");
+                }
+
             } else if(command.equals("h")||command.equals("H")){
-                model.getHint();
+                model.requestHint(); //printed by update on this thread when it's found, the game goes on meanwhile
                 
                // model.toggleTile(hint.getX(),hint.getY());
 
@@ -187,32 +301,52 @@ public class LightsOutTUI implements Observer<LightsOutModel, String> {
 
     /**
      * Runs the Text UI for Lights Outs
-     * @param args cmd line args
+     * @param args cmd line args; an optional side length for the board, --diff to redraw only changed lights, and
+     *             --stats to record solver metrics from the start
      */
     public static void main(String[] args){
-
-        LightsOutTUI ui = new LightsOutTUI();
+        int n = LightsOutModel.DEFAULT_DIMENSION;
+        boolean diff = false;
+        for (String arg : args) {
+            if (arg.equals("--diff")) {
+                diff = true;
+            } else if (arg.equals("--stats")) {
+                SolverMetrics.setEnabled(true);
+            } else {
+                n = Integer.parseInt(arg);
+            }
+        }
+        LightsOutTUI ui = new LightsOutTUI(n, diff);
         ui.run();
 
     }
 
     @Override
-    public void update(LightsOutModel model, String msg) {
-        if (msg.equals(LightsOutModel.LOADED)){ // game is loaded successfully
-            System.out.println("Game Loaded");
-            displayBoard();
-            return;
-        }else if (msg.equals(LightsOutModel.LOAD_FAILED)){ //Game failed to load
-            System.out.println("Error Loading Game");
-            return;
-        } else if (msg.startsWith(LightsOutModel.HINT_PREFIX)) { //Model is reporting a  hint
-            System.out.println(msg);
-            //don't display board
-            return;
-        }
-
-        if (model.gameOver()) { //checks if game is over.
-            displayBoard();
+    public void update(LightsOutModel model, ModelEvent event) {
+        switch (event.getKind()) {
+            case LOADED: // game is loaded successfully
+                frame.invalidate();
+                displayBoard();
+                System.out.println("Game Loaded");
+                break;
+            case LOAD_FAILED: //Game failed to load
+                System.out.println("Error Loading Game: " + model.getLoadError());
+                break;
+            case HINT: //Model is reporting a  hint
+                System.out.println(event.getMessage());
+                //don't display board
+                break;
+            case UNSOLVABLE:
+                System.out.println("This board cannot be solved.");
+                break;
+            case HINT_TIMED_OUT:
+                System.out.println("No hint found in time.");
+                break;
+            case TOGGLED:
+                displayBoard(); // renders the board
+                System.out.println(event.getMessage());
+                break;
+            case WON: //the toggle before this already showed the dark board
       /* Cool encodings renderable only on cool systems.
             System.out.print("\033[0;4m"); //turn on underline
             System.out.print("\033[5m");
@@ -222,11 +356,9 @@ public class LightsOutTUI implements Observer<LightsOutModel, String> {
 
        */
 
-            System.out.println("You win. Good for you.");
-            gameOn = false;
-            return;
+                System.out.println("You win. Good for you.");
+                gameOn = false;
+                break;
         }
-        displayBoard(); // renders the board
-        System.out.println(msg);
     }
 }
@@ -0,0 +1,163 @@
+package tui;
+
+import model.LightsOutModel;
+
+import java.io.PrintStream;
+
+/**
+ * Draws the board of a game as text: a header of column numbers, one line per row with its number, then a footer line. Each frame
+ * is composed into a buffer that is kept between frames and written with a single call, instead of one print per
+ * light.
+ * <p>
+ * In ANSI diff mode the first frame clears the screen, and later frames of a board of the same size only move the
+ * cursor to the lights that changed since the last frame and rewrite those, then rewrite the footer and clear
+ * everything below it. Output printed after a frame is therefore wiped by the next one.
+ * <p>
+ * The cursor positions are only right while the whole frame is on screen, so diff mode is used only for boards that
+ * fit the screen with {@link #SPARE_LINES} lines to spare below. Larger boards get full frames that simply scroll.
+ */
+class TextFrame {
+    private static final String CSI = "\033[";
+    /**
+     * Lines kept free below the footer in diff mode for the prompt and messages, so they don't scroll the board.
+     */
+    static final int SPARE_LINES = 4;
+
+    private final char on;
+    private final char off;
+    private final boolean ansiDiff;
+    private final int screenColumns;
+    private final int screenLines;
+    private final StringBuilder buffer = new StringBuilder();
+    private long[] row = new long[1];
+
+    /**
+     * The lights on screen in diff mode, in the layout of {@link LightsOutModel#getRow(int, long[])}.
+     */
+    private long[] shown;
+    private int shownSize = -1;
+    private int rowWords;
+
+    /**
+     * @param on the symbol for a light that is on
+     * @param off the symbol for a light that is off
+     * @param ansiDiff redraw only the lights that changed, using ANSI cursor movement, on an 80x24 screen
+     */
+    TextFrame(char on, char off, boolean ansiDiff) {
+        this(on, off, ansiDiff, 80, 24);
+    }
+
+    /**
+     * @param on the symbol for a light that is on
+     * @param off the symbol for a light that is off
+     * @param ansiDiff redraw only the lights that changed, using ANSI cursor movement, for boards that fit the screen
+     * @param screenColumns the width of the terminal
+     * @param screenLines the height of the terminal
+     */
+    TextFrame(char on, char off, boolean ansiDiff, int screenColumns, int screenLines) {
+        this.on = on;
+        this.off = off;
+        this.ansiDiff = ansiDiff;
+        this.screenColumns = screenColumns;
+        this.screenLines = screenLines;
+    }
+
+    /**
+     * Makes the next frame redraw the whole screen, e.g. after other output scrolled it.
+     */
+    void invalidate() {
+        shownSize = -1;
+    }
+
+    /**
+     * Draws the model's board.
+     * @param model the game
+     * @param footer printed on the line after the board
+     * @param out where to write the frame
+     */
+    void draw(LightsOutModel model, String footer, PrintStream out) {
+        buffer.setLength(0);
+        boolean diff = ansiDiff && fits(model.getDimension());
+        if (diff && shownSize == model.getDimension()) {
+            composeChanges(model, footer);
+        } else {
+            composeFull(model, footer, diff);
+        }
+        out.append(buffer);
+        out.flush();
+    }
+
+    /**
+     * @return true iff a full frame of the size, and the spare lines below it, are on screen without wrapping
+     */
+    private boolean fits(int size) {
+        if (size + 2 + SPARE_LINES > screenLines) {
+            return false;
+        }
+        int header = 2;
+        for (int c = 0; c < size; c++) {
+            header += Integer.toString(c).length() + 1;
+        }
+        int rowWidth = Integer.toString(size - 1).length() + 1 + 2 * size;
+        return Math.max(header, rowWidth) <= screenColumns;
+    }
+
+    private void composeFull(LightsOutModel model, String footer, boolean diff) {
+        int size = model.getDimension();
+        rowWords = (size + 63) >>> 6;
+        if (row.length < rowWords) {
+            row = new long[rowWords];
+        }
+        if (diff) {
+            buffer.append(CSI).append('H').append(CSI).append("2J");
+            if (shown == null || shown.length < size * rowWords) {
+                shown = new long[size * rowWords];
+            }
+            shownSize = size;
+        } else {
+            shownSize = -1;
+        }
+        buffer.append("  ");
+        for (int c = 0; c < size; c++) {
+            buffer.append(c).append(' ');
+        }
+        for (int y = 0; y < size; y++) {
+            model.getRow(y, row);
+            buffer.append('\n').append(y).append(' ');
+            for (int x = 0; x < size; x++) {
+                buffer.append((row[x >>> 6] >>> x & 1L) != 0 ? on : off).append(' ');
+            }
+            if (diff) {
+                System.arraycopy(row, 0, shown, y * rowWords, rowWords);
+            }
+        }
+        buffer.append('\n').append(footer).append('\n');
+    }
+
+    private void composeChanges(LightsOutModel model, String footer) {
+        int size = model.getDimension();
+        for (int y = 0; y < size; y++) {
+            model.getRow(y, row);
+            int labelWidth = Integer.toString(y).length();
+            for (int w = 0; w < rowWords; w++) {
+                long changed = row[w] ^ shown[y * rowWords + w];
+                while (changed != 0) {
+                    int x = w * 64 + Long.numberOfTrailingZeros(changed);
+                    changed &= changed - 1;
+                    // screen lines and columns count from 1, the header is line 1
+                    moveTo(y + 2, labelWidth + 2 + 2 * x);
+                    buffer.append((row[x >>> 6] >>> x & 1L) != 0 ? on : off);
+                }
+                shown[y * rowWords + w] = row[w];
+            }
+        }
+        moveTo(size + 2, 1);
+        buffer.append(CSI).append("2K").append(footer);
+        moveTo(size + 3, 1);
+        buffer.append(CSI).append('J');
+    }
+
+    private void moveTo(int line, int column) {
+        buffer.append(CSI).append(line).append(';').append(column).append('H');
+    }
+}